@@ -0,0 +1,82 @@
+package net.egork.telegram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Bot API calls over a pool of keep-alive connections, sized to the number of calls a bot may have in flight.
+ *
+ * @author egor@egork.net
+ */
+public class BotApiClient {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+    private final CloseableHttpClient client;
+
+    public BotApiClient(String token, int maxConnections) {
+        baseUrl = "https://api.telegram.org/bot" + token + "/";
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(maxConnections);
+        connections.setDefaultMaxPerRoute(maxConnections);
+        client = HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(10000)
+                        .setConnectionRequestTimeout(10000)
+                        .setSocketTimeout(30000)
+                        .build())
+                .build();
+    }
+
+    public <T extends Serializable> T execute(BotApiMethod<T> method) throws TelegramApiException {
+        method.validate();
+        HttpPost post = new HttpPost(baseUrl + method.getMethod());
+        try {
+            post.setEntity(new StringEntity(MAPPER.writeValueAsString(method), ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = client.execute(post)) {
+                return method.deserializeResponse(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new TelegramApiException("Unable to execute " + method.getMethod(), e);
+        }
+    }
+
+    /**
+     * Sets the address Telegram posts updates to, empty url switches back to getUpdates
+     */
+    public void setWebhook(String url) throws TelegramApiException {
+        HttpPost post = new HttpPost(baseUrl + "setWebhook");
+        try {
+            post.setEntity(new StringEntity(MAPPER.writeValueAsString(Collections.singletonMap("url", url)),
+                    ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = client.execute(post)) {
+                String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                JsonNode result = MAPPER.readTree(body);
+                if (!result.path("ok").asBoolean()) {
+                    throw new TelegramApiRequestException("Error setting webhook", new JSONObject(body));
+                }
+            }
+        } catch (IOException e) {
+            throw new TelegramApiException("Unable to execute setWebhook", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.egork.telegram;
+
+import org.telegram.telegrambots.api.methods.GetFile;
+import org.telegram.telegrambots.api.methods.groupadministration.GetChatMember;
+import org.telegram.telegrambots.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.ChatMember;
+import org.telegram.telegrambots.api.objects.File;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+
+import java.util.function.Consumer;
+
+/**
+ * Everything {@link TelegramBot} needs from the Bot API.
+ *
+ * @author egor@egork.net
+ */
+public interface BotTransport {
+    Message sendMessage(SendMessage method) throws TelegramApiException;
+
+    Message editMessageText(EditMessageText method) throws TelegramApiException;
+
+    ChatMember getChatMember(GetChatMember method) throws TelegramApiException;
+
+    void kickChatMember(KickChatMember method) throws TelegramApiException;
+
+    void pinChatMessage(PinChatMessage method) throws TelegramApiException;
+
+    File getFile(GetFile method) throws TelegramApiException;
+
+    /**
+     * Starts update intake, every received update is passed to {@code updates}
+     */
+    void start(Consumer<Update> updates) throws TelegramApiException;
+}
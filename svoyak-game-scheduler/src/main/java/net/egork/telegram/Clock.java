@@ -0,0 +1,23 @@
+package net.egork.telegram;
+
+/**
+ * Source of time and delayed execution. Components take time from a clock rather than from the system, so they can
+ * be run faster than real time.
+ *
+ * @author egor@egork.net
+ */
+public interface Clock {
+    Clock SYSTEM = new SystemClock();
+
+    long millis();
+
+    /**
+     * Runs the task once {@code delay} milliseconds of this clock's time have passed
+     */
+    TimerWheel.Timeout schedule(Runnable task, long delay);
+
+    /**
+     * Runs the task after {@code delay} and then every {@code period} milliseconds of this clock's time
+     */
+    TimerWheel.Timeout schedule(Runnable task, long delay, long period);
+}
@@ -0,0 +1,39 @@
+package net.egork.telegram;
+
+/**
+ * Bot API call that ran out of retries.
+ *
+ * @author egor@egork.net
+ */
+public class DeadLetter {
+    public enum Type {
+        SEND,
+        EDIT,
+        KICK
+    }
+
+    public final Type type;
+    public final long chatId;
+    // message id for edits, user id for kicks
+    public final int id;
+    public final String text;
+    public final String[] keyboard;
+    public final String error;
+    public final long time;
+
+    public DeadLetter(Type type, long chatId, int id, String text, String[] keyboard, String error, long time) {
+        this.type = type;
+        this.chatId = chatId;
+        this.id = id;
+        this.text = text;
+        this.keyboard = keyboard;
+        this.error = error;
+        this.time = time;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + chatId + (type == Type.SEND ? "" : " " + id) + (text == null ? "" : ": " +
+                (text.length() > 50 ? text.substring(0, 50) + "..." : text)) + " (" + error + ")";
+    }
+}
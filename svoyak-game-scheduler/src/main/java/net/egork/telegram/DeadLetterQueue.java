@@ -0,0 +1,111 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Failed calls, persisted to a file so they survive restarts and can be inspected and replayed.
+ *
+ * @author egor@egork.net
+ */
+public class DeadLetterQueue {
+    private static final Logger logger = LogManager.getLogger(DeadLetterQueue.class);
+
+    private final String fileName;
+    private final List<DeadLetter> letters = new ArrayList<>();
+
+    public DeadLetterQueue(String fileName) {
+        this.fileName = fileName;
+        load();
+    }
+
+    public synchronized void add(DeadLetter letter) {
+        letters.add(letter);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName, true),
+                StandardCharsets.UTF_8))) {
+            save(out, letter);
+        } catch (IOException e) {
+            logger.error("Unable to persist dead letter " + letter, e);
+        }
+    }
+
+    public synchronized List<DeadLetter> getLetters() {
+        return new ArrayList<>(letters);
+    }
+
+    /**
+     * Removes all letters from the queue and returns them
+     */
+    public synchronized List<DeadLetter> takeAll() {
+        List<DeadLetter> result = new ArrayList<>(letters);
+        letters.clear();
+        new File(fileName).delete();
+        return result;
+    }
+
+    private void load() {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String s;
+            while ((s = reader.readLine()) != null) {
+                DeadLetter.Type type = DeadLetter.Type.valueOf(s);
+                long chatId = Long.parseLong(reader.readLine());
+                int id = Integer.parseInt(reader.readLine());
+                long time = Long.parseLong(reader.readLine());
+                String error = unescape(reader.readLine());
+                int buttons = Integer.parseInt(reader.readLine());
+                String[] keyboard = buttons == -1 ? null : new String[buttons];
+                for (int i = 0; i < buttons; i++) {
+                    keyboard[i] = unescape(reader.readLine());
+                }
+                String text = reader.readLine();
+                letters.add(new DeadLetter(type, chatId, id, text.isEmpty() ? null : unescape(text.substring(1)),
+                        keyboard, error, time));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to load dead letters from " + fileName, e);
+        }
+    }
+
+    private static void save(PrintWriter out, DeadLetter letter) {
+        out.println(letter.type);
+        out.println(letter.chatId);
+        out.println(letter.id);
+        out.println(letter.time);
+        out.println(escape(letter.error));
+        out.println(letter.keyboard == null ? -1 : letter.keyboard.length);
+        if (letter.keyboard != null) {
+            for (String button : letter.keyboard) {
+                out.println(escape(button));
+            }
+        }
+        out.println(letter.text == null ? "" : ">" + escape(letter.text));
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                builder.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single place where executors and timers are created. With {@code execution.mode=virtual} all executors run on
+ * virtual threads (Java 21+, falls back to platform threads on older runtimes), so thousands of chats and rooms
+ * don't mean thousands of OS threads. With {@code execution.mode=single} they all share one thread instead, so tasks
+ * run strictly in submission order, which together with a {@link VirtualClock} makes a run repeatable. Delayed and
+ * periodic tasks all share one {@link TimerWheel}.
+ * <p>
+ * Also holds the clock every component takes time from: the wall clock, or with {@code clock.speed} set, a clock
+ * running that many times faster. Harnesses can install their own with {@link #setClock} before anything is created.
+ * <p>
+ * Counts the tasks submitted to its executors that haven't finished yet, so a {@link VirtualClock} can wait for all
+ * work caused by one timer to settle before it fires the next.
+ *
+ * @author egor@egork.net
+ */
+public class Execution {
+    private static final Logger logger = LogManager.getLogger(Execution.class);
+
+    private static final TimerWheel timer = new TimerWheel("Timer", 10, 512);
+    private static final Method ofVirtual;
+    private static final Method name;
+    private static final Method factory;
+    private static final AtomicInteger busy = new AtomicInteger();
+    private static final Object idle = new Object();
+    private static final ExecutorService single = "single".equals(System.getProperty("execution.mode")) ?
+            new TrackedPool(1, r -> new Thread(r, "Execution")) : null;
+    private static volatile Clock clock = System.getProperty("clock.speed") == null ? Clock.SYSTEM :
+            new ScaledClock(Double.parseDouble(System.getProperty("clock.speed")));
+
+    static {
+        Method[] methods = null;
+        if ("virtual".equals(System.getProperty("execution.mode"))) {
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                methods = new Method[]{Thread.class.getMethod("ofVirtual"), builder.getMethod("name", String.class,
+                        long.class), builder.getMethod("factory")};
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not supported by this runtime, using platform threads");
+            }
+        }
+        ofVirtual = methods == null ? null : methods[0];
+        name = methods == null ? null : methods[1];
+        factory = methods == null ? null : methods[2];
+    }
+
+    private Execution() {
+    }
+
+    public static boolean isVirtual() {
+        return ofVirtual != null;
+    }
+
+    public static TimerWheel getTimer() {
+        return timer;
+    }
+
+    public static Clock getClock() {
+        return clock;
+    }
+
+    public static void setClock(Clock clock) {
+        Execution.clock = clock;
+    }
+
+    /**
+     * @return executor running tasks one at a time in submission order
+     */
+    public static ExecutorService newSerialExecutor(String name) {
+        return newPool(name, 1);
+    }
+
+    public static ExecutorService newPool(String name, int size) {
+        if (single != null) {
+            return single;
+        }
+        return new TrackedPool(size, threads(name));
+    }
+
+    /**
+     * Blocks until every task submitted to the executors created here has finished, including the tasks those tasks
+     * submitted
+     */
+    public static void awaitIdle() throws InterruptedException {
+        synchronized (idle) {
+            while (busy.get() != 0) {
+                idle.wait();
+            }
+        }
+    }
+
+    private static ThreadFactory threads(String threadName) {
+        if (ofVirtual != null) {
+            try {
+                return (ThreadFactory) factory.invoke(name.invoke(ofVirtual.invoke(null), threadName + " #", 0L));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return r -> new Thread(r, threadName);
+    }
+
+    private static class TrackedPool extends ThreadPoolExecutor {
+        private TrackedPool(int size, ThreadFactory threads) {
+            super(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threads);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            busy.incrementAndGet();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                done();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            done();
+        }
+
+        private static void done() {
+            if (busy.decrementAndGet() == 0) {
+                synchronized (idle) {
+                    idle.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package net.egork.telegram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.json.JSONObject;
+import org.telegram.telegrambots.api.methods.GetFile;
+import org.telegram.telegrambots.api.methods.PartialBotApiMethod;
+import org.telegram.telegrambots.api.methods.groupadministration.GetChatMember;
+import org.telegram.telegrambots.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.ChatMember;
+import org.telegram.telegrambots.api.objects.File;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * In-memory stand-in for the Bot API, for load testing without Telegram. Records every call, can add latency and
+ * reply with 429 errors, and feeds synthetic updates to the bot.
+ *
+ * @author egor@egork.net
+ */
+public class FakeTransport implements BotTransport {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int botId;
+    private final List<PartialBotApiMethod<?>> calls = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Long, AtomicInteger> messageIds = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Integer>> members = new ConcurrentHashMap<>();
+    private final AtomicInteger updateIds = new AtomicInteger();
+    private volatile Consumer<Update> updates;
+    private volatile long minLatency;
+    private volatile long maxLatency;
+    private volatile double tooManyRequests;
+    private volatile int retryAfter;
+
+    public FakeTransport(int botId) {
+        this.botId = botId;
+    }
+
+    public void setLatency(long minLatency, long maxLatency) {
+        this.minLatency = minLatency;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Makes a {@code probability} share of calls fail with 429 and the given retry_after
+     */
+    public void setTooManyRequests(double probability, int retryAfter) {
+        tooManyRequests = probability;
+        this.retryAfter = retryAfter;
+    }
+
+    public List<PartialBotApiMethod<?>> getCalls() {
+        synchronized (calls) {
+            return new ArrayList<>(calls);
+        }
+    }
+
+    public int getCallCount(Class<?> method) {
+        int count = 0;
+        synchronized (calls) {
+            for (PartialBotApiMethod<?> call : calls) {
+                if (method.isInstance(call)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Message sendMessage(SendMessage method) throws TelegramApiException {
+        call(method);
+        long chatId = Long.parseLong(method.getChatId());
+        int messageId = messageIds.computeIfAbsent(chatId, id -> new AtomicInteger()).incrementAndGet();
+        ObjectNode message = message(chatId, messageId, botId, "Bot");
+        message.put("text", method.getText());
+        return convert(message, Message.class);
+    }
+
+    @Override
+    public Message editMessageText(EditMessageText method) throws TelegramApiException {
+        call(method);
+        ObjectNode message = message(Long.parseLong(method.getChatId()), method.getMessageId(), botId, "Bot");
+        message.put("text", method.getText());
+        return convert(message, Message.class);
+    }
+
+    @Override
+    public ChatMember getChatMember(GetChatMember method) throws TelegramApiException {
+        call(method);
+        ObjectNode member = MAPPER.createObjectNode();
+        member.set("user", user(method.getUserId(), "User"));
+        member.put("status", members(Long.parseLong(method.getChatId())).contains(method.getUserId()) ? "member" :
+                "left");
+        return convert(member, ChatMember.class);
+    }
+
+    @Override
+    public void kickChatMember(KickChatMember method) throws TelegramApiException {
+        call(method);
+        members(Long.parseLong(method.getChatId())).remove(method.getUserId());
+    }
+
+    @Override
+    public void pinChatMessage(PinChatMessage method) throws TelegramApiException {
+        call(method);
+    }
+
+    @Override
+    public File getFile(GetFile method) throws TelegramApiException {
+        call(method);
+        ObjectNode file = MAPPER.createObjectNode();
+        file.put("file_id", method.getFileId());
+        file.put("file_path", "documents/" + method.getFileId());
+        return convert(file, File.class);
+    }
+
+    @Override
+    public void start(Consumer<Update> updates) {
+        this.updates = updates;
+    }
+
+    /**
+     * Delivers a text message from the given user to the bot
+     */
+    public void feedMessage(long chatId, int userId, String firstName, String text) {
+        ObjectNode message = message(chatId, messageIds.computeIfAbsent(chatId, id -> new AtomicInteger())
+                .incrementAndGet(), userId, firstName);
+        message.put("text", text);
+        feed(message);
+    }
+
+    /**
+     * Delivers the service message about the given user joining the chat
+     */
+    public void feedNewMember(long chatId, int userId, String firstName) {
+        members(chatId).add(userId);
+        ObjectNode message = message(chatId, messageIds.computeIfAbsent(chatId, id -> new AtomicInteger())
+                .incrementAndGet(), userId, firstName);
+        message.set("new_chat_member", user(userId, firstName));
+        feed(message);
+    }
+
+    private void feed(ObjectNode message) {
+        ObjectNode update = MAPPER.createObjectNode();
+        update.put("update_id", updateIds.incrementAndGet());
+        update.set("message", message);
+        try {
+            updates.accept(convert(update, Update.class));
+        } catch (TelegramApiException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Set<Integer> members(long chatId) {
+        return members.computeIfAbsent(chatId, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    private void call(PartialBotApiMethod<?> method) throws TelegramApiException {
+        calls.add(method);
+        if (maxLatency > 0) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (tooManyRequests > 0 && ThreadLocalRandom.current().nextDouble() < tooManyRequests) {
+            JSONObject response = new JSONObject();
+            response.put("ok", false);
+            response.put("error_code", 429);
+            response.put("description", "Too Many Requests: retry after " + retryAfter);
+            response.put("parameters", new JSONObject().put("retry_after", retryAfter));
+            throw new TelegramApiRequestException("Error sending " + method.getClass().getSimpleName(), response);
+        }
+    }
+
+    private static ObjectNode message(long chatId, int messageId, int userId, String firstName) {
+        ObjectNode message = MAPPER.createObjectNode();
+        message.put("message_id", messageId);
+        message.put("date", (int) (Execution.getClock().millis() / 1000));
+        message.set("from", user(userId, firstName));
+        ObjectNode chat = MAPPER.createObjectNode();
+        chat.put("id", chatId);
+        chat.put("type", chatId < 0 ? "group" : "private");
+        message.set("chat", chat);
+        return message;
+    }
+
+    private static ObjectNode user(int userId, String firstName) {
+        ObjectNode user = MAPPER.createObjectNode();
+        user.put("id", userId);
+        user.put("first_name", firstName);
+        return user;
+    }
+
+    private static <T> T convert(ObjectNode node, Class<T> type) throws TelegramApiException {
+        try {
+            return MAPPER.treeToValue(node, type);
+        } catch (IOException e) {
+            throw new TelegramApiException("Unable to build " + type.getSimpleName(), e);
+        }
+    }
+}
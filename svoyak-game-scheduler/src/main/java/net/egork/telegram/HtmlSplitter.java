@@ -0,0 +1,164 @@
+package net.egork.telegram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits Telegram HTML into fragments of limited length. Prefers to cut at line breaks, never cuts inside a tag or an
+ * entity, and closes tags open at a cut, reopening them at the start of the next fragment. Fragments with nothing but
+ * tags and whitespace are dropped, Telegram rejects them as empty.
+ *
+ * @author egor@egork.net
+ */
+public class HtmlSplitter {
+    private HtmlSplitter() {
+    }
+
+    public static List<String> split(String text, int limit) {
+        List<String> result = new ArrayList<>();
+        if (text.length() <= limit) {
+            result.add(text);
+            return result;
+        }
+        List<String> open = new ArrayList<>();
+        int closingLength = 0;
+        String prefix = "";
+        int start = 0;
+        int lineBreak = -1;
+        List<String> openAtBreak = null;
+        int i = 0;
+        while (i < text.length()) {
+            int end = tokenEnd(text, i);
+            int closingAfter = closingLength;
+            if (isTag(text, i, end)) {
+                String name = tagName(text, i, end);
+                if (text.charAt(i + 1) != '/') {
+                    closingAfter += closing(name).length();
+                } else if (indexOf(open, name) != -1) {
+                    closingAfter -= closing(name).length();
+                }
+            }
+            if (prefix.length() + end - start + closingAfter > limit) {
+                int cut;
+                int next;
+                List<String> openAtCut;
+                if (lineBreak > start) {
+                    cut = lineBreak;
+                    next = lineBreak + 1;
+                    openAtCut = openAtBreak;
+                } else if (i > start) {
+                    cut = i;
+                    next = i;
+                    openAtCut = open;
+                } else {
+                    // Single token longer than the limit, nothing better to do than send it as is
+                    cut = end;
+                    next = end;
+                    apply(open, text, i, end);
+                    openAtCut = open;
+                }
+                StringBuilder fragment = new StringBuilder(prefix.length() + cut - start + closingLength);
+                fragment.append(prefix).append(text, start, cut);
+                for (int j = openAtCut.size() - 1; j >= 0; j--) {
+                    fragment.append(closing(openAtCut.get(j)));
+                }
+                add(result, fragment.toString());
+                StringBuilder reopened = new StringBuilder();
+                open = new ArrayList<>(openAtCut.size());
+                closingLength = 0;
+                for (String tag : openAtCut) {
+                    reopened.append(tag);
+                    open.add(tag);
+                    closingLength += closing(tag).length();
+                }
+                prefix = reopened.toString();
+                start = next;
+                i = next;
+                lineBreak = -1;
+                continue;
+            }
+            if (text.charAt(i) == '\n') {
+                lineBreak = i;
+                openAtBreak = new ArrayList<>(open);
+            }
+            apply(open, text, i, end);
+            closingLength = closingAfter;
+            i = end;
+        }
+        if (start < text.length()) {
+            add(result, prefix + text.substring(start));
+        }
+        return result;
+    }
+
+    private static void add(List<String> result, String fragment) {
+        int i = 0;
+        while (i < fragment.length()) {
+            int end = tokenEnd(fragment, i);
+            if (!isTag(fragment, i, end) && !Character.isWhitespace(fragment.charAt(i))) {
+                result.add(fragment);
+                return;
+            }
+            i = end;
+        }
+    }
+
+    private static int tokenEnd(String text, int at) {
+        char c = text.charAt(at);
+        if (c == '<') {
+            int end = text.indexOf('>', at);
+            return end == -1 ? text.length() : end + 1;
+        }
+        if (c == '&') {
+            int end = text.indexOf(';', at);
+            if (end != -1 && end - at <= 10) {
+                return end + 1;
+            }
+        }
+        return at + 1;
+    }
+
+    private static boolean isTag(String text, int from, int to) {
+        return text.charAt(from) == '<' && to - from > 2;
+    }
+
+    // Open tags are kept as written, with attributes, so they can be reopened
+    private static void apply(List<String> open, String text, int from, int to) {
+        if (!isTag(text, from, to)) {
+            return;
+        }
+        if (text.charAt(from + 1) != '/') {
+            open.add(text.substring(from, to));
+            return;
+        }
+        int index = indexOf(open, tagName(text, from, to));
+        if (index != -1) {
+            open.remove(index);
+        }
+    }
+
+    private static int indexOf(List<String> open, String name) {
+        for (int i = open.size() - 1; i >= 0; i--) {
+            if (tagName(open.get(i), 0, open.get(i).length()).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String tagName(String text, int from, int to) {
+        int start = from + 1;
+        if (start < to && text.charAt(start) == '/') {
+            start++;
+        }
+        int end = start;
+        while (end < to && Character.isLetterOrDigit(text.charAt(end))) {
+            end++;
+        }
+        return text.substring(start, end);
+    }
+
+    private static String closing(String tag) {
+        return "</" + (tag.startsWith("<") ? tagName(tag, 0, tag.length()) : tag) + ">";
+    }
+}
@@ -0,0 +1,84 @@
+package net.egork.telegram;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.objects.replykeyboard.ApiResponse;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.exceptions.TelegramApiValidationException;
+
+import java.io.IOException;
+
+/**
+ * pinChatMessage, which the telegrambots version we use doesn't have yet.
+ *
+ * @author egor@egork.net
+ */
+public class PinChatMessage extends BotApiMethod<Boolean> {
+    public static final String PATH = "pinChatMessage";
+
+    @JsonProperty("chat_id")
+    private String chatId;
+    @JsonProperty("message_id")
+    private Integer messageId;
+    @JsonProperty("disable_notification")
+    private Boolean disableNotification;
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    public PinChatMessage setChatId(long chatId) {
+        this.chatId = Long.toString(chatId);
+        return this;
+    }
+
+    public Integer getMessageId() {
+        return messageId;
+    }
+
+    public PinChatMessage setMessageId(int messageId) {
+        this.messageId = messageId;
+        return this;
+    }
+
+    public PinChatMessage disableNotification() {
+        disableNotification = true;
+        return this;
+    }
+
+    @Override
+    public String getMethod() {
+        return PATH;
+    }
+
+    @Override
+    public Boolean deserializeResponse(String answer) throws TelegramApiRequestException {
+        try {
+            ApiResponse<Boolean> result = OBJECT_MAPPER.readValue(answer, new TypeReference<ApiResponse<Boolean>>() {
+            });
+            if (result.getOk()) {
+                return result.getResult();
+            }
+            throw new TelegramApiRequestException("Error pinning message", result);
+        } catch (IOException e) {
+            throw new TelegramApiRequestException("Unable to deserialize response", e);
+        }
+    }
+
+    @Override
+    public void validate() throws TelegramApiValidationException {
+        if (chatId == null) {
+            throw new TelegramApiValidationException("ChatId can't be empty", this);
+        }
+        if (messageId == null) {
+            throw new TelegramApiValidationException("MessageId can't be empty", this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PinChatMessage{chatId='" + chatId + "', messageId=" + messageId + ", disableNotification=" +
+                disableNotification + "}";
+    }
+}
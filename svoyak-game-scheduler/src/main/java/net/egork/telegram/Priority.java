@@ -0,0 +1,12 @@
+package net.egork.telegram;
+
+/**
+ * Outbound lanes, in the order they are served when the bot-wide limit is the bottleneck.
+ *
+ * @author egor@egork.net
+ */
+public enum Priority {
+    HIGH,
+    NORMAL,
+    LOW
+}
@@ -0,0 +1,56 @@
+package net.egork.telegram;
+
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed Bot API call is retried.
+ *
+ * @author egor@egork.net
+ */
+public class RetryPolicy {
+    private static final long BASE_DELAY = 500;
+    private static final long MAX_DELAY = 60000;
+
+    public boolean shouldRetry(DeadLetter.Type type, int attempts, TelegramApiException e) {
+        if (attempts >= maxAttempts(type)) {
+            return false;
+        }
+        if (e instanceof TelegramApiRequestException) {
+            Integer errorCode = ((TelegramApiRequestException) e).getErrorCode();
+            // Bad request or lack of rights won't go away by itself
+            return errorCode == null || errorCode != 400 && errorCode != 403;
+        }
+        return true;
+    }
+
+    public long delay(int attempts, TelegramApiException e) {
+        if (e instanceof TelegramApiRequestException) {
+            TelegramApiRequestException requestException = (TelegramApiRequestException) e;
+            if (requestException.getParameters() != null && requestException.getParameters().getRetryAfter() != null) {
+                return requestException.getParameters().getRetryAfter() * 1000L +
+                        ThreadLocalRandom.current().nextLong(BASE_DELAY);
+            }
+        }
+        long cap = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempts, 16));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    public int maxAttempts(DeadLetter.Type type) {
+        switch (type) {
+        case SEND:
+            return 6;
+        case KICK:
+            return 4;
+        default:
+            return 3;
+        }
+    }
+
+    public static boolean isNotModified(TelegramApiException e) {
+        return e instanceof TelegramApiRequestException && ((TelegramApiRequestException) e).getApiResponse() != null &&
+                ((TelegramApiRequestException) e).getApiResponse().contains("message is not modified");
+    }
+}
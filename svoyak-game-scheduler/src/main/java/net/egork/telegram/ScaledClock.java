@@ -0,0 +1,34 @@
+package net.egork.telegram;
+
+/**
+ * Clock running {@code speed} times faster than the wall clock, starting from the current time.
+ *
+ * @author egor@egork.net
+ */
+public class ScaledClock implements Clock {
+    private final double speed;
+    private final long start = System.currentTimeMillis();
+
+    public ScaledClock(double speed) {
+        this.speed = speed;
+    }
+
+    @Override
+    public long millis() {
+        return start + (long) ((System.currentTimeMillis() - start) * speed);
+    }
+
+    @Override
+    public TimerWheel.Timeout schedule(Runnable task, long delay) {
+        return Execution.getTimer().schedule(task, scale(delay));
+    }
+
+    @Override
+    public TimerWheel.Timeout schedule(Runnable task, long delay, long period) {
+        return Execution.getTimer().schedule(task, scale(delay), Math.max(1, scale(period)));
+    }
+
+    private long scale(long delay) {
+        return (long) Math.ceil(delay / speed);
+    }
+}
@@ -0,0 +1,59 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mailbox that runs its tasks one at a time, in submission order, on a shared pool. Costs a queue rather than a thread,
+ * so there can be as many as there are games. Yields the pool thread after a batch of tasks, so a busy mailbox can't
+ * starve the others.
+ *
+ * @author egor@egork.net
+ */
+public class SerialExecutor implements Executor {
+    private static final Logger logger = LogManager.getLogger(SerialExecutor.class);
+    private static final int BATCH = 32;
+
+    private final Executor pool;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public SerialExecutor(Executor pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mailbox.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH; i++) {
+            Runnable task = mailbox.poll();
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error(e);
+            }
+        }
+        scheduled.set(false);
+        if (!mailbox.isEmpty()) {
+            schedule();
+        }
+    }
+}
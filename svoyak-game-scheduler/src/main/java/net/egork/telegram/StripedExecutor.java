@@ -0,0 +1,97 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed number of single thread lanes, tasks with the same key always run on the same lane. Keeps tasks for one chat
+ * ordered while different chats are handled in parallel.
+ *
+ * @author egor@egork.net
+ */
+public class StripedExecutor {
+    private static final Logger logger = LogManager.getLogger(StripedExecutor.class);
+
+    private final Lane[] lanes;
+
+    public StripedExecutor(String name, int size) {
+        lanes = new Lane[size];
+        for (int i = 0; i < size; i++) {
+            lanes[i] = new Lane(name + " #" + i);
+        }
+    }
+
+    public void execute(long key, Runnable task) {
+        lanes[lane(key)].execute(task);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @return number of tasks waiting in the lane
+     */
+    public int getQueueDepth(int lane) {
+        return lanes[lane].depth.get();
+    }
+
+    public long getHandled(int lane) {
+        return lanes[lane].handled.get();
+    }
+
+    /**
+     * @return average time in microseconds spent in tasks of the lane
+     */
+    public long getAverageHandlingTime(int lane) {
+        long handled = lanes[lane].handled.get();
+        return handled == 0 ? 0 : lanes[lane].handlingTime.get() / handled / 1000;
+    }
+
+    private int lane(long key) {
+        int hash = Long.hashCode(key);
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lanes.length; i++) {
+            result.append(i).append(": depth ").append(getQueueDepth(i)).append(", handled ").append(getHandled(i))
+                    .append(", avg ").append(getAverageHandlingTime(i)).append("us\n");
+        }
+        return result.toString();
+    }
+
+    private static class Lane {
+        private final Executor executor;
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicLong handled = new AtomicLong();
+        private final AtomicLong handlingTime = new AtomicLong();
+
+        private Lane(String name) {
+            executor = Execution.newSerialExecutor(name);
+        }
+
+        private void execute(Runnable task) {
+            depth.incrementAndGet();
+            executor.execute(() -> {
+                depth.decrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error(e);
+                } finally {
+                    handlingTime.addAndGet(System.nanoTime() - start);
+                    handled.incrementAndGet();
+                }
+            });
+        }
+    }
+}
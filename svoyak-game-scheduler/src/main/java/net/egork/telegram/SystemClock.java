@@ -0,0 +1,23 @@
+package net.egork.telegram;
+
+/**
+ * Wall clock time, delays run on the shared timer wheel.
+ *
+ * @author egor@egork.net
+ */
+public class SystemClock implements Clock {
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public TimerWheel.Timeout schedule(Runnable task, long delay) {
+        return Execution.getTimer().schedule(task, delay);
+    }
+
+    @Override
+    public TimerWheel.Timeout schedule(Runnable task, long delay, long period) {
+        return Execution.getTimer().schedule(task, delay, period);
+    }
+}
@@ -13,101 +13,252 @@ import org.telegram.telegrambots.api.objects.replykeyboard.ReplyKeyboard;
 import org.telegram.telegrambots.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.api.objects.replykeyboard.ReplyKeyboardRemove;
 import org.telegram.telegrambots.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.exceptions.TelegramApiException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.function.Consumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Outbound calls are queued per chat on the bot executor, which only does bookkeeping. The calls themselves run on a
+ * separate pool, at most one per chat at a time and at most {@code bot.inflight} overall.
+ * <p>
+ * With coalescing on, a message that isn't urgent can wait {@code bot.coalesce.window} milliseconds in its chat queue,
+ * so the messages sent right after it go out in the same call. Off by default: games wait for each message before
+ * starting their next timer, so the window makes every game longer, for about 1% fewer calls in the simulation.
+ *
  * @author egor@egork.net
  */
-public abstract class TelegramBot extends TelegramLongPollingBot {
+public abstract class TelegramBot {
 
     private Logger logger = LogManager.getLogger(TelegramBot.class);
-    private final Map<Long, Long> nextTimeSlot = new HashMap<>();
-    private final String token;
+    private final Clock clock = Execution.getClock();
+
+    private final TokenBucket global = new TokenBucket(
+            Double.parseDouble(System.getProperty("bot.burst.global", "30")),
+            Double.parseDouble(System.getProperty("bot.rate.global", "30")));
+    private final Map<Long, ChatQueue> chats = new HashMap<>();
+    private final Map<Priority, Set<ChatQueue>> lanes = new EnumMap<>(Priority.class);
+    private final AtomicInteger pendingSends = new AtomicInteger();
+    private long pumpAt;
+    private boolean coalescing;
+    private final long coalesceWindow = Long.parseLong(System.getProperty("bot.coalesce.window", "0"));
+    private volatile int coalesced;
+    private volatile int collapsedEdits;
+    private final BotTransport transport;
+    private final RetryPolicy retryPolicy = new RetryPolicy();
+    private final DeadLetterQueue deadLetters;
+    private final int maxInFlight;
+    private int inFlight;
     private Executor executor;
+    private final ExecutorService calls;
+    private final ExecutorService kicks;
+    private final StripedExecutor dispatcher;
     private final String name;
 
-    public TelegramBot(String token, String name) {
-        this.token = token;
-        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Executor for " + name));
+    public TelegramBot(BotTransport transport, String name) {
+        this.transport = transport;
+        executor = Execution.newSerialExecutor("Executor for " + name);
+        maxInFlight = getMaxInFlight();
+        calls = Execution.newPool("Calls for " + name, maxInFlight);
+        kicks = Execution.newPool("Kicks for " + name, Integer.parseInt(System.getProperty("bot.kick.parallel",
+                "4")));
+        dispatcher = new StripedExecutor("Dispatch for " + name, Integer.parseInt(System.getProperty(
+                "bot.dispatch.lanes", String.valueOf(Runtime.getRuntime().availableProcessors()))));
         this.name = name;
+        deadLetters = new DeadLetterQueue(name + ".deadletters");
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * @return maximum number of concurrent API calls per bot
+     */
+    public static int getMaxInFlight() {
+        return Integer.parseInt(System.getProperty("bot.inflight", "8"));
     }
 
     public File getFile(String fileId) {
         try {
             GetFile args = new GetFile();
             args.setFileId(fileId);
-            return getFile(args);
+            return transport.getFile(args);
         } catch (TelegramApiException e) {
             logger.error(e);
             return null;
         }
     }
 
-    private Message sendMessageImpl(long chatId, String text, ReplyKeyboard rkm) {
-        SendMessage args = new SendMessage();
-        args.setChatId(chatId);
-        args.setText(text);
-        args.setParseMode(ParseMode.HTML);
-        args.setReplyMarkup(rkm);
-        int tries = 0;
-        while (true) {
-            if (tries == 20) {
-                return null;
-            }
-            tries++;
-            try {
-                return sendMessage(args);
-            } catch (TelegramApiException e) {
-                logger.error(e);
-            }
-        }
+    public CompletableFuture<Integer> sendMessage(long chatId, String text, String[] keyboard) {
+        return sendMessage(chatId, text, keyboard, Priority.NORMAL);
     }
 
-    public void sendMessage(long chatId, String text, String[] keyboard) {
-        sendMessage(chatId, text, keyboard, null);
+    public CompletableFuture<Integer> sendMessage(long chatId, String text) {
+        return sendMessage(chatId, text, null, Priority.NORMAL);
     }
 
-    public void sendMessage(long chatId, String text, Consumer<Integer> callback) {
-        sendMessage(chatId, text, null, callback);
+    public CompletableFuture<Integer> sendMessage(long chatId, String text, Priority priority) {
+        return sendMessage(chatId, text, null, priority);
     }
 
-    public void sendMessage(long chatId, String text) {
-        sendMessage(chatId, text, null, null);
+    /**
+     * @return future with id of the sent message, 0 if it couldn't be sent
+     */
+    public CompletableFuture<Integer> sendMessage(long chatId, String text, String[] keyboard, Priority priority) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        executor.execute(() -> enqueue(chatId, text, keyboard, priority, result));
+        return result;
     }
 
-
-    public void sendMessage(long chatId, String text, String[] keyboard, Consumer<Integer> callback) {
-        executor.execute(() -> sendMessageImpl(chatId, text, keyboard, callback));
+    private void enqueue(long chatId, String text, String[] keyboard, Priority priority,
+            CompletableFuture<Integer> result) {
+        List<String> fragments = HtmlSplitter.split(text, 4096);
+        for (int i = 0; i < fragments.size(); i++) {
+            enqueue(chatId, new PendingMessage(fragments.get(i), keyboard, 0, priority,
+                    i == fragments.size() - 1 ? result : null));
+        }
     }
 
-    private void sendMessageImpl(long chatId, String text, String[] keyboard, Consumer<Integer> callback) {
-        if (!nextTimeSlot.containsKey(chatId)) {
-            nextTimeSlot.put(chatId, 0L);
+    private void enqueue(long chatId, PendingMessage message) {
+        ChatQueue chat = chats.get(chatId);
+        if (chat == null) {
+            chats.put(chatId, chat = new ChatQueue(chatId));
         }
-        if (System.currentTimeMillis() < nextTimeSlot.get(chatId)) {
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    executor.execute(() -> sendMessageImpl(chatId, text, keyboard, callback));
+        if (chat.messages.isEmpty() && !chat.inFlight) {
+            lanes.get(message.priority).add(chat);
+        }
+        message.queuedAt = clock.millis();
+        chat.messages.add(message);
+        pendingSends.incrementAndGet();
+        pump();
+    }
+
+    private void pump() {
+        while (inFlight < maxInFlight) {
+            long now = clock.millis();
+            long wait = global.delay(now);
+            if (wait > 0) {
+                schedulePump(now + wait);
+                return;
+            }
+            ChatQueue ready = null;
+            long readyAt = Long.MAX_VALUE;
+            for (Priority priority : Priority.values()) {
+                for (ChatQueue chat : lanes.get(priority)) {
+                    long delay = chat.retryAt - now;
+                    PendingMessage head = chat.messages.peek();
+                    // Edits only count towards the bot-wide limit
+                    if (!head.isEdit()) {
+                        delay = Math.max(delay, chat.bucket.delay(now));
+                        if (coalescing && head.priority != Priority.HIGH) {
+                            delay = Math.max(delay, head.queuedAt + coalesceWindow - now);
+                        }
+                    }
+                    if (delay <= 0) {
+                        ready = chat;
+                        break;
+                    }
+                    readyAt = Math.min(readyAt, now + delay);
                 }
-            }, Math.max(0, nextTimeSlot.get(chatId) - System.currentTimeMillis()) + 100);
-            return;
+                if (ready != null) {
+                    lanes.get(priority).remove(ready);
+                    break;
+                }
+            }
+            if (ready == null) {
+                if (readyAt != Long.MAX_VALUE) {
+                    schedulePump(readyAt);
+                }
+                return;
+            }
+            global.take(now);
+            PendingMessage message = ready.messages.poll();
+            pendingSends.decrementAndGet();
+            if (message.isEdit()) {
+                ready.edits.remove(message.editId);
+            } else {
+                ready.bucket.take(now);
+                if (coalescing) {
+                    message = coalesce(message, ready.messages);
+                }
+            }
+            ready.inFlight = true;
+            inFlight++;
+            ChatQueue chat = ready;
+            PendingMessage call = message;
+            calls.execute(() -> execute(chat, call));
+        }
+    }
+
+    // HIGH messages (questions, answer prompts) are never merged: they should stand out and may be edited later
+    private PendingMessage coalesce(PendingMessage message, Deque<PendingMessage> queue) {
+        if (message.priority == Priority.HIGH) {
+            return message;
         }
-        if (text.length() > 4096) {
-            int at = text.substring(0, 4096).lastIndexOf('\n');
-            if (at == -1) {
-                at = 4096;
+        while (!queue.isEmpty()) {
+            PendingMessage next = queue.peek();
+            if (next.isEdit() || next.priority == Priority.HIGH || !compatible(message.keyboard, next.keyboard) ||
+                    message.text.length() + 2 + next.text.length() > 4096) {
+                break;
             }
-            sendMessageImpl(chatId, text.substring(0, at), keyboard, null);
-            sendMessageImpl(chatId, text.substring(at), keyboard, callback);
+            queue.poll();
+            pendingSends.decrementAndGet();
+            coalesced++;
+            PendingMessage merged = new PendingMessage(message.text + "\n\n" + next.text,
+                    next.keyboard != null && next.keyboard.length == 0 ? message.keyboard : next.keyboard, 0,
+                    message.priority, null);
+            merged.results.addAll(message.results);
+            merged.results.addAll(next.results);
+            message = merged;
+        }
+        return message;
+    }
+
+    private static boolean compatible(String[] first, String[] second) {
+        return Arrays.equals(first, second) || first != null && first.length == 0 ||
+                second != null && second.length == 0;
+    }
+
+    /**
+     * Enables merging of messages waiting for the same chat into a single API call
+     */
+    public void setCoalescing(boolean coalescing) {
+        executor.execute(() -> this.coalescing = coalescing);
+    }
+
+    /**
+     * @return number of messages that were merged into previous ones instead of being sent separately
+     */
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    private void schedulePump(long at) {
+        if (pumpAt <= at && pumpAt > clock.millis()) {
             return;
         }
+        pumpAt = at;
+        clock.schedule(() -> executor.execute(this::pump), at - clock.millis());
+    }
+
+    private void execute(ChatQueue chat, PendingMessage message) {
+        try {
+            int messageId = message.isEdit() ? edit(chat.chatId, message) : send(chat.chatId, message);
+            executor.execute(() -> completed(chat, message, messageId, null));
+        } catch (TelegramApiException e) {
+            executor.execute(() -> completed(chat, message, 0, e));
+        } catch (RuntimeException e) {
+            // Whatever the transport throws, the chat must get its slot back
+            TelegramApiException failure = new TelegramApiException("Unexpected failure", e);
+            executor.execute(() -> completed(chat, message, 0, failure));
+        }
+    }
+
+    private int send(long chatId, PendingMessage message) throws TelegramApiException {
+        String[] keyboard = message.keyboard;
         ReplyKeyboard markup;
         if (keyboard == null) {
             markup = new ReplyKeyboardRemove();
@@ -121,61 +272,287 @@ public abstract class TelegramBot extends TelegramLongPollingBot {
         } else {
             markup = null;
         }
-        Message message = sendMessageImpl(chatId, text, markup);
-        nextTimeSlot.put(chatId, System.currentTimeMillis() + 1000);
-        if (callback != null) {
-            callback.accept(message == null ? 0 : message.getMessageId());
+        SendMessage args = new SendMessage();
+        args.setChatId(chatId);
+        args.setText(message.text);
+        args.setParseMode(ParseMode.HTML);
+        args.setReplyMarkup(markup);
+        Message sent = transport.sendMessage(args);
+        return sent == null || sent.getMessageId() == null ? 0 : sent.getMessageId();
+    }
+
+    private int edit(long chatId, PendingMessage message) throws TelegramApiException {
+        EditMessageText args = new EditMessageText();
+        args.setChatId(chatId);
+        args.setMessageId(message.editId);
+        args.setText(message.text);
+        args.setParseMode(ParseMode.HTML);
+        try {
+            transport.editMessageText(args);
+        } catch (TelegramApiException e) {
+            if (!RetryPolicy.isNotModified(e)) {
+                throw e;
+            }
         }
+        return message.editId;
     }
 
-    public void kickPlayer(long chatId, int userId) {
-        executor.execute(() -> {
-            try {
-                GetChatMember args = new GetChatMember();
-                args.setChatId(chatId);
-                args.setUserId(userId);
-                ChatMember chatMember = getChatMember(args);
-                if (chatMember.getStatus().equals(MemberStatus.MEMBER)) {
-                    KickChatMember member = new KickChatMember();
-                    member.setChatId(chatId);
-                    member.setUserId(userId);
-                    kickMember(member);
+    private void completed(ChatQueue chat, PendingMessage message, int messageId, TelegramApiException e) {
+        chat.inFlight = false;
+        inFlight--;
+        if (e == null) {
+            message.complete(messageId);
+        } else {
+            logger.error(e);
+            message.attempts++;
+            DeadLetter.Type type = message.isEdit() ? DeadLetter.Type.EDIT : DeadLetter.Type.SEND;
+            if (message.isEdit() && chat.edits.containsKey(message.editId)) {
+                // A newer text for this message is already queued
+                collapsedEdits++;
+                message.complete(0);
+            } else if (retryPolicy.shouldRetry(type, message.attempts, e)) {
+                if (message.isEdit()) {
+                    chat.edits.put(message.editId, message);
                 }
+                // Stays at the head of the chat queue, so later messages can't overtake it
+                chat.messages.addFirst(message);
+                pendingSends.incrementAndGet();
+                chat.retryAt = clock.millis() + retryPolicy.delay(message.attempts, e);
+                schedulePump(chat.retryAt);
+            } else {
+                deadLetters.add(new DeadLetter(type, chat.chatId, message.editId, message.text, message.keyboard,
+                        String.valueOf(e), clock.millis()));
+                message.complete(0);
+            }
+        }
+        if (!chat.messages.isEmpty()) {
+            lanes.get(chat.messages.peek().priority).add(chat);
+        }
+        pump();
+    }
+
+    /**
+     * @return number of messages and edits waiting for a send slot
+     */
+    public int getPendingSends() {
+        return pendingSends.get();
+    }
+
+    /**
+     * @return future with true once the user is out of the chat, false if the kick was given up on
+     */
+    public CompletableFuture<Boolean> kickPlayer(long chatId, int userId) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        kicks.execute(() -> kick(chatId, userId, 0, done));
+        return done;
+    }
+
+    /**
+     * Pins the message without notifying the chat members
+     *
+     * @return future with false if the message couldn't be pinned, e.g. the bot is not an admin of the chat
+     */
+    public CompletableFuture<Boolean> pinMessage(long chatId, int messageId) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        calls.execute(() -> {
+            try {
+                transport.pinChatMessage(new PinChatMessage().setChatId(chatId).setMessageId(messageId)
+                        .disableNotification());
+                done.complete(true);
             } catch (TelegramApiException e) {
                 logger.error(e);
+                done.complete(false);
             }
         });
+        return done;
     }
 
-    protected abstract void processMessage(Message message);
+    /**
+     * Kicks all the given users, {@code bot.kick.parallel} at a time. Kicks have their own threads, so room clean-up
+     * doesn't hold back messages.
+     *
+     * @return future with the users whose kicks were given up on, completes once every kick is done or given up on
+     */
+    public CompletableFuture<List<Integer>> kickAll(long chatId, Collection<Integer> userIds) {
+        List<Integer> users = new ArrayList<>(userIds);
+        List<CompletableFuture<Boolean>> kicked = new ArrayList<>(users.size());
+        for (int userId : users) {
+            kicked.add(kickPlayer(chatId, userId));
+        }
+        return CompletableFuture.allOf(kicked.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Integer> remaining = new ArrayList<>();
+            for (int i = 0; i < users.size(); i++) {
+                if (!kicked.get(i).join()) {
+                    remaining.add(users.get(i));
+                }
+            }
+            return remaining;
+        });
+    }
+
+    private void kick(long chatId, int userId, int attempts, CompletableFuture<Boolean> done) {
+        try {
+            GetChatMember args = new GetChatMember();
+            args.setChatId(chatId);
+            args.setUserId(userId);
+            ChatMember chatMember = transport.getChatMember(args);
+            if (chatMember.getStatus().equals(MemberStatus.MEMBER)) {
+                KickChatMember member = new KickChatMember();
+                member.setChatId(chatId);
+                member.setUserId(userId);
+                transport.kickChatMember(member);
+            }
+            done.complete(true);
+        } catch (TelegramApiException e) {
+            logger.error(e);
+            if (retryPolicy.shouldRetry(DeadLetter.Type.KICK, attempts + 1, e)) {
+                clock.schedule(() -> kicks.execute(() -> kick(chatId, userId, attempts + 1, done)),
+                        retryPolicy.delay(attempts + 1, e));
+            } else {
+                deadLetters.add(new DeadLetter(DeadLetter.Type.KICK, chatId, userId, null, null, String.valueOf(e),
+                        clock.millis()));
+                done.complete(false);
+            }
+        }
+    }
 
+    /**
+     * Called on one of the dispatch lanes, messages from the same chat are processed one at a time and in order
+     *
+     * @param receivedAt when the update reached the bot
+     */
+    protected abstract void processMessage(Message message, long receivedAt);
+
+    /**
+     * Edits are queued behind messages to the same chat, so they can't overtake the message they edit
+     */
     public void editMessage(long chatId, int messageId, String text) {
+        editMessage(chatId, messageId, text, Priority.HIGH);
+    }
+
+    public void editMessage(long chatId, int messageId, String text, Priority priority) {
+        if (messageId == 0) {
+            // The message was never sent, there is nothing to edit
+            logger.warn("Edit of an unsent message in " + chatId + " skipped");
+            return;
+        }
         executor.execute(() -> {
-            try {
-                EditMessageText args = new EditMessageText();
-                args.setChatId(chatId);
-                args.setMessageId(messageId);
-                args.setText(text);
-                args.setParseMode(ParseMode.HTML);
-                editMessageText(args);
-            } catch (TelegramApiException e) {
-                logger.error(e);
+            ChatQueue chat = chats.get(chatId);
+            PendingMessage pending = chat == null ? null : chat.edits.get(messageId);
+            if (pending != null) {
+                // Only the latest text matters, the queued edit keeps its place and takes the new one
+                pending.text = text;
+                collapsedEdits++;
+                return;
             }
+            PendingMessage message = new PendingMessage(text, null, messageId, priority, null);
+            enqueue(chatId, message);
+            chats.get(chatId).edits.put(messageId, message);
         });
     }
 
-    @Override
-    public String getBotToken() {
-        return token;
+    /**
+     * @return number of edits that were superseded by a later edit of the same message before being sent
+     */
+    public int getCollapsedEdits() {
+        return collapsedEdits;
+    }
+
+    public List<DeadLetter> getDeadLetters() {
+        return deadLetters.getLetters();
+    }
+
+    /**
+     * Submits all dead letters again, with a fresh retry budget
+     *
+     * @return number of replayed calls
+     */
+    public int replayDeadLetters() {
+        List<DeadLetter> letters = deadLetters.takeAll();
+        for (DeadLetter letter : letters) {
+            switch (letter.type) {
+            case SEND:
+                sendMessage(letter.chatId, letter.text, letter.keyboard, Priority.LOW);
+                break;
+            case EDIT:
+                editMessage(letter.chatId, letter.id, letter.text);
+                break;
+            case KICK:
+                kickPlayer(letter.chatId, letter.id);
+                break;
+            }
+        }
+        return letters.size();
+    }
+
+    public void start() throws TelegramApiException {
+        transport.start(this::onUpdateReceived);
     }
 
-    @Override
-    public void onUpdateReceived(Update update) {
-        executor.execute(() -> processMessage(update.getMessage()));
+    private void onUpdateReceived(Update update) {
+        long receivedAt = clock.millis();
+        Message message = update.getMessage();
+        dispatcher.execute(message == null ? 0 : message.getChatId(), () -> processMessage(message, receivedAt));
     }
 
-    @Override
-    public String getBotUsername() {
+    public StripedExecutor getDispatcher() {
+        return dispatcher;
+    }
+
+    public String getName() {
         return name;
     }
+
+    private static class PendingMessage {
+        private String text;
+        private final String[] keyboard;
+        // message to edit, 0 for new messages
+        private final int editId;
+        private final Priority priority;
+        private final List<CompletableFuture<Integer>> results = new ArrayList<>(1);
+        private int attempts;
+        private long queuedAt;
+
+        private PendingMessage(String text, String[] keyboard, int editId, Priority priority,
+                CompletableFuture<Integer> result) {
+            this.text = text;
+            this.keyboard = keyboard;
+            this.editId = editId;
+            this.priority = priority;
+            if (result != null) {
+                results.add(result);
+            }
+        }
+
+        private boolean isEdit() {
+            return editId != 0;
+        }
+
+        private void complete(int messageId) {
+            for (CompletableFuture<Integer> result : results) {
+                result.complete(messageId);
+            }
+        }
+    }
+
+    private static class ChatQueue {
+        private final long chatId;
+        private final TokenBucket bucket;
+        private final Deque<PendingMessage> messages = new ArrayDeque<>();
+        // queued edits by message id
+        private final Map<Integer, PendingMessage> edits = new HashMap<>();
+        private long retryAt;
+        private boolean inFlight;
+
+        private ChatQueue(long chatId) {
+            this.chatId = chatId;
+            if (chatId < 0) {
+                bucket = new TokenBucket(Double.parseDouble(System.getProperty("bot.burst.group", "10")),
+                        Double.parseDouble(System.getProperty("bot.rate.group", "0.33")));
+            } else {
+                bucket = new TokenBucket(Double.parseDouble(System.getProperty("bot.burst.chat", "1")),
+                        Double.parseDouble(System.getProperty("bot.rate.chat", "1")));
+            }
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package net.egork.telegram;
+
+import org.telegram.telegrambots.TelegramBotsApi;
+import org.telegram.telegrambots.api.methods.GetFile;
+import org.telegram.telegrambots.api.methods.groupadministration.GetChatMember;
+import org.telegram.telegrambots.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.ChatMember;
+import org.telegram.telegrambots.api.objects.File;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+
+import java.util.function.Consumer;
+
+/**
+ * Real Bot API: updates come through long polling, calls go through a {@link BotApiClient}.
+ *
+ * @author egor@egork.net
+ */
+public class TelegramTransport implements BotTransport {
+    private final TelegramBotsApi botsApi;
+    private final String token;
+    private final String name;
+    private final BotApiClient client;
+
+    public TelegramTransport(TelegramBotsApi botsApi, String token, String name, int maxConnections) {
+        this.botsApi = botsApi;
+        this.token = token;
+        this.name = name;
+        client = new BotApiClient(token, maxConnections);
+    }
+
+    @Override
+    public Message sendMessage(SendMessage method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public Message editMessageText(EditMessageText method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public ChatMember getChatMember(GetChatMember method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public void kickChatMember(KickChatMember method) throws TelegramApiException {
+        client.execute(method);
+    }
+
+    @Override
+    public void pinChatMessage(PinChatMessage method) throws TelegramApiException {
+        client.execute(method);
+    }
+
+    @Override
+    public File getFile(GetFile method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public void start(Consumer<Update> updates) throws TelegramApiException {
+        // getUpdates doesn't work while a webhook is set, e.g. after running in webhook mode
+        client.setWebhook("");
+        botsApi.registerBot(new TelegramLongPollingBot() {
+            @Override
+            public void onUpdateReceived(Update update) {
+                updates.accept(update);
+            }
+
+            @Override
+            public String getBotUsername() {
+                return name;
+            }
+
+            @Override
+            public String getBotToken() {
+                return token;
+            }
+        });
+    }
+}
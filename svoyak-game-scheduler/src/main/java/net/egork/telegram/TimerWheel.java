@@ -0,0 +1,159 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel: a single daemon thread that runs delayed tasks with tick granularity. Tasks are expected to be
+ * short (typically they just hand work over to some executor).
+ *
+ * @author egor@egork.net
+ */
+public class TimerWheel {
+    private static final Logger logger = LogManager.getLogger(TimerWheel.class);
+
+    private final long tickDuration;
+    private final int mask;
+    private final List<Task>[] buckets;
+    private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startTime;
+    private long tick;
+
+    public TimerWheel(String name, long tickDuration, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size should be a power of two");
+        }
+        this.tickDuration = tickDuration;
+        mask = wheelSize - 1;
+        buckets = newBuckets(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        startTime = System.currentTimeMillis();
+        Thread worker = new Thread(this::work, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Task>[] newBuckets(int wheelSize) {
+        return (List<Task>[]) new List<?>[wheelSize];
+    }
+
+    public Timeout schedule(Runnable task, long delay) {
+        return schedule(task, delay, 0);
+    }
+
+    /**
+     * Runs the task every {@code period} milliseconds after the initial delay, until cancelled
+     */
+    public Timeout schedule(Runnable task, long delay, long period) {
+        Task result = new Task(task, System.currentTimeMillis() - startTime + Math.max(0, delay), period);
+        pending.incrementAndGet();
+        incoming.add(result);
+        return result;
+    }
+
+    /**
+     * @return number of scheduled tasks, cancelled ones are counted until their deadline
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void work() {
+        while (true) {
+            long sleep = startTime + (tick + 1) * tickDuration - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferIncoming();
+            expire(buckets[(int) (tick & mask)], System.currentTimeMillis() - startTime);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Task task;
+        while ((task = incoming.poll()) != null) {
+            add(task);
+        }
+    }
+
+    private void add(Task task) {
+        long due = Math.max((task.deadline + tickDuration - 1) / tickDuration, tick);
+        task.rounds = (due - tick) / buckets.length;
+        buckets[(int) (due & mask)].add(task);
+    }
+
+    private void expire(List<Task> bucket, long now) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Task task = bucket.get(i);
+            if (task.rounds > 0) {
+                task.rounds--;
+                i++;
+                continue;
+            }
+            if (task.deadline > now && !task.cancelled) {
+                i++;
+                continue;
+            }
+            bucket.set(i, bucket.get(bucket.size() - 1));
+            bucket.remove(bucket.size() - 1);
+            if (task.cancelled) {
+                pending.decrementAndGet();
+                continue;
+            }
+            try {
+                task.task.run();
+            } catch (RuntimeException e) {
+                logger.error(e);
+            }
+            if (task.period > 0 && !task.cancelled) {
+                // Next run goes to a later tick, so it can't be picked up by this loop again
+                task.deadline = Math.max(task.deadline + task.period, (tick + 1) * tickDuration);
+                add(task);
+            } else {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    public interface Timeout {
+        /**
+         * Prevents further runs, a run that already started still completes
+         */
+        void cancel();
+    }
+
+    private static class Task implements Timeout {
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Task(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
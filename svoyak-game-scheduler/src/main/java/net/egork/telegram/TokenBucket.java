@@ -0,0 +1,42 @@
+package net.egork.telegram;
+
+/**
+ * Classic token bucket. Not thread safe, callers are expected to use it from a single thread.
+ *
+ * @author egor@egork.net
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double perMillisecond;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double perSecond) {
+        this.capacity = capacity;
+        perMillisecond = perSecond / 1000;
+        tokens = capacity;
+    }
+
+    /**
+     * @return 0 if a token is available at {@code now}, otherwise number of milliseconds until it will be
+     */
+    public long delay(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / perMillisecond);
+    }
+
+    public void take(long now) {
+        refill(now);
+        tokens--;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * perMillisecond);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.egork.telegram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Clock that only moves when told to. Due tasks run one at a time, in deadline order, with the clock set to each task's
+ * deadline. Before firing a task it waits until the executors from {@link Execution} are idle, so everything the
+ * previous task set off, including the timers it added, is in place first. Tasks themselves run on an executor from
+ * {@link Execution} too, so with {@code execution.mode=single} they never overlap with other work. A day of games, or the
+ * daily rating reset, then passes as fast as the tasks themselves run, and the same inputs give the same run.
+ *
+ * @author egor@egork.net
+ */
+public class VirtualClock implements Clock {
+    private static final Logger logger = LogManager.getLogger(VirtualClock.class);
+
+    private final Executor timer = Execution.newSerialExecutor("Virtual clock");
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(Comparator.<Task>comparingLong(task -> task.at)
+            .thenComparingLong(task -> task.sequence));
+    private volatile long now;
+    private long sequence;
+
+    public VirtualClock(long start) {
+        now = start;
+    }
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    @Override
+    public TimerWheel.Timeout schedule(Runnable task, long delay) {
+        return schedule(task, delay, 0);
+    }
+
+    @Override
+    public synchronized TimerWheel.Timeout schedule(Runnable task, long delay, long period) {
+        Task result = new Task(task, now + Math.max(0, delay), period, sequence++);
+        tasks.add(result);
+        return result;
+    }
+
+    /**
+     * Moves the clock forward by {@code millis}, running everything that becomes due on the way
+     */
+    public void advance(long millis) throws InterruptedException {
+        advanceTo(now + millis);
+    }
+
+    public void advanceTo(long time) throws InterruptedException {
+        while (runNext(time)) {
+            // One task per call, the clock is at its deadline
+        }
+        synchronized (this) {
+            now = Math.max(now, time);
+        }
+    }
+
+    /**
+     * Moves the clock to the next deadline and runs the task due then
+     *
+     * @return false if nothing is scheduled, the clock stays where it is
+     */
+    public boolean advanceToNext() throws InterruptedException {
+        return runNext(Long.MAX_VALUE);
+    }
+
+    private boolean runNext(long limit) throws InterruptedException {
+        Task task;
+        do {
+            Execution.awaitIdle();
+            synchronized (this) {
+                task = tasks.peek();
+                if (task == null || task.at > limit) {
+                    return false;
+                }
+                tasks.poll();
+                now = Math.max(now, task.at);
+                if (task.period > 0 && !task.cancelled) {
+                    task.at += task.period;
+                    tasks.add(task);
+                }
+            }
+        } while (task.cancelled);
+        Runnable run = task.task;
+        timer.execute(() -> {
+            try {
+                run.run();
+            } catch (RuntimeException e) {
+                logger.error(e);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return number of scheduled tasks, including cancelled ones not yet due
+     */
+    public synchronized int getPending() {
+        return tasks.size();
+    }
+
+    private static class Task implements TimerWheel.Timeout {
+        private final Runnable task;
+        private final long period;
+        private final long sequence;
+        private long at;
+        private volatile boolean cancelled;
+
+        private Task(Runnable task, long at, long period, long sequence) {
+            this.task = task;
+            this.at = at;
+            this.period = period;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
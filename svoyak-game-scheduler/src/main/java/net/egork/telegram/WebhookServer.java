@@ -0,0 +1,76 @@
+package net.egork.telegram;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.telegram.telegrambots.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.function.Consumer;
+
+/**
+ * Embedded HTTP server receiving webhook updates for any number of bots, one path per bot. Accepts a single update
+ * or a JSON array of them, so recorded updates can be replayed locally with something like
+ * {@code curl -d @updates.json http://localhost:8443/<path>}.
+ *
+ * @author egor@egork.net
+ */
+public class WebhookServer {
+    private static final Logger logger = LogManager.getLogger(WebhookServer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+
+    public WebhookServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Execution.newPool("Webhook server", 2));
+        server.start();
+    }
+
+    /**
+     * @param name used in the logs instead of the path, which is secret
+     */
+    public void register(String name, String path, Consumer<Update> updates) {
+        server.createContext(path, exchange -> handle(exchange, name, updates));
+    }
+
+    private void handle(HttpExchange exchange, String name, Consumer<Update> updates) throws IOException {
+        int status = 200;
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            status = 405;
+        } else {
+            try (InputStream body = exchange.getRequestBody()) {
+                parse(body, updates);
+            } catch (IOException e) {
+                logger.error("Malformed update for " + name, e);
+                status = 400;
+            } catch (RuntimeException e) {
+                logger.error("Unable to process update for " + name, e);
+                status = 500;
+            }
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private static void parse(InputStream body, Consumer<Update> updates) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    updates.accept(MAPPER.readValue(parser, Update.class));
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                updates.accept(MAPPER.readValue(parser, Update.class));
+            } else {
+                throw new IOException("Update expected, found " + token);
+            }
+        }
+    }
+}
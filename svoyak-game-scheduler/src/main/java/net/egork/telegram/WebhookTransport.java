@@ -0,0 +1,75 @@
+package net.egork.telegram;
+
+import org.telegram.telegrambots.api.methods.GetFile;
+import org.telegram.telegrambots.api.methods.groupadministration.GetChatMember;
+import org.telegram.telegrambots.api.methods.groupadministration.KickChatMember;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.ChatMember;
+import org.telegram.telegrambots.api.objects.File;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+
+import java.util.function.Consumer;
+
+/**
+ * Real Bot API with updates pushed by Telegram to a {@link WebhookServer}. The path is derived from the token, so
+ * only Telegram knows where to post.
+ *
+ * @author egor@egork.net
+ */
+public class WebhookTransport implements BotTransport {
+    private final WebhookServer server;
+    private final String name;
+    private final String url;
+    private final String path;
+    private final BotApiClient client;
+
+    /**
+     * @param url public address the server is reachable at, without trailing slash
+     */
+    public WebhookTransport(WebhookServer server, String url, String token, String name, int maxConnections) {
+        this.server = server;
+        this.name = name;
+        this.url = url;
+        path = "/" + token.replace(':', '_');
+        client = new BotApiClient(token, maxConnections);
+    }
+
+    @Override
+    public Message sendMessage(SendMessage method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public Message editMessageText(EditMessageText method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public ChatMember getChatMember(GetChatMember method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public void kickChatMember(KickChatMember method) throws TelegramApiException {
+        client.execute(method);
+    }
+
+    @Override
+    public void pinChatMessage(PinChatMessage method) throws TelegramApiException {
+        client.execute(method);
+    }
+
+    @Override
+    public File getFile(GetFile method) throws TelegramApiException {
+        return client.execute(method);
+    }
+
+    @Override
+    public void start(Consumer<Update> updates) throws TelegramApiException {
+        server.register(name, path, updates);
+        client.setWebhook(url + path);
+    }
+}
@@ -42,6 +42,10 @@ public class Utils {
         return user.getFirstName();
     }
 
+    public static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     public static boolean isNumber(String s, int min, int max) {
         try {
             int number = Integer.parseInt(s);
@@ -0,0 +1,240 @@
+package net.egork.telegram.svoyak.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks players' answers against the accepted ones. Accepted answers are normalized once: only letters and digits
+ * are kept, lowercased, with ё folded to е, both with and without the parts in brackets. A player's answer is
+ * normalized on the fly while it is compared, so checking allocates nothing.
+ * <p>
+ * With typos allowed an answer is also accepted within an edit distance of one per {@value #LETTERS_PER_TYPO} letters
+ * of the accepted answer, at most {@value #MAX_TYPOS}. Distance is computed with Hyyrö's variant of Myers'
+ * bit-parallel algorithm over the precomputed letter masks of the accepted answer, one step per letter of the player's
+ * answer. Answers longer than 64 letters are only matched exactly. Answers that miss by a letter are logged, to tune
+ * the tolerance.
+ * <p>
+ * A {@link AnswerNormalizer} can add forms: accepted answers are normalized with it once. Where the package allows it,
+ * players' answers are normalized with the same one and matched against the added forms only, so an answer as written
+ * never matches a stem. {@link #matches(String)} ignores the added forms.
+ *
+ * @author egor@egork.net
+ */
+public class AnswerMatcher {
+    private static final Logger logger = LogManager.getLogger(AnswerMatcher.class);
+    private static final int LETTERS_PER_TYPO = 5;
+    private static final int MAX_TYPOS = 3;
+
+    private final char[][] forms;
+    private final int written;
+    private final AnswerNormalizer normalizer;
+    private final char[][] alphabets;
+    private final long[][] masks;
+
+    public AnswerMatcher(List<String> answers) {
+        this(answers, AnswerNormalizer.NONE);
+    }
+
+    public AnswerMatcher(List<String> answers, AnswerNormalizer normalizer) {
+        this.normalizer = normalizer;
+        List<char[]> forms = new ArrayList<>();
+        for (String answer : answers) {
+            add(forms, 0, normalize(answer, false));
+            add(forms, 0, normalize(answer, true));
+        }
+        written = forms.size();
+        if (normalizer != AnswerNormalizer.NONE) {
+            for (String answer : answers) {
+                String normalized = normalizer.normalize(answer);
+                add(forms, written, normalize(normalized, false));
+                add(forms, written, normalize(normalized, true));
+            }
+        }
+        this.forms = forms.toArray(new char[forms.size()][]);
+        alphabets = new char[this.forms.length][];
+        masks = new long[this.forms.length][];
+        for (int i = 0; i < this.forms.length; i++) {
+            char[] form = this.forms[i];
+            if (form.length == 0 || form.length > 64) {
+                continue;
+            }
+            char[] alphabet = form.clone();
+            Arrays.sort(alphabet);
+            int size = 0;
+            for (int j = 0; j < alphabet.length; j++) {
+                if (j == 0 || alphabet[j] != alphabet[j - 1]) {
+                    alphabet[size++] = alphabet[j];
+                }
+            }
+            alphabets[i] = Arrays.copyOf(alphabet, size);
+            masks[i] = new long[size];
+            for (int j = 0; j < form.length; j++) {
+                masks[i][Arrays.binarySearch(alphabets[i], form[j])] |= 1L << j;
+            }
+        }
+    }
+
+    private static void add(List<char[]> forms, int from, char[] form) {
+        for (int i = from; i < forms.size(); i++) {
+            if (Arrays.equals(forms.get(i), form)) {
+                return;
+            }
+        }
+        forms.add(form);
+    }
+
+    public boolean matches(String answer) {
+        return matches(answer, 0, written);
+    }
+
+    private boolean matches(String answer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (matches(forms[i], answer, true) || matches(forms[i], answer, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #matches(String)}, but also accepts answers with a few typos if {@code typos} is set, and answers in
+     * another grammatical form if {@code normalized} is set
+     */
+    public boolean matches(String answer, boolean typos, boolean normalized) {
+        if (matches(answer, 0, written)) {
+            return true;
+        }
+        int count = normalized ? forms.length : written;
+        String input = count > written ? normalizer.normalize(answer) : null;
+        if (input != null && matches(input, written, count)) {
+            return true;
+        }
+        int closest = -1;
+        int closestDistance = 0;
+        int closestExcess = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (masks[i] == null) {
+                continue;
+            }
+            int tolerance = getTolerance(forms[i].length);
+            for (int mode = 0; mode < 2; mode++) {
+                int distance = distance(i, i < written ? answer : input, mode == 0);
+                if (distance - tolerance < closestExcess) {
+                    closest = i;
+                    closestDistance = distance;
+                    closestExcess = distance - tolerance;
+                }
+            }
+        }
+        if (closestExcess <= 0 && typos) {
+            logger.info("Accepted with typos: '" + answer + "' for '" + new String(forms[closest]) + "', distance " +
+                    closestDistance);
+            return true;
+        }
+        if (closestExcess <= 1) {
+            logger.info("Near miss" + (typos ? "" : " with typos off") + ": '" + answer + "' for '" +
+                    new String(forms[closest]) + "', distance " + closestDistance);
+        }
+        return false;
+    }
+
+    /**
+     * @return number of typos allowed in an answer of the given number of letters
+     */
+    public static int getTolerance(int length) {
+        return Math.min(MAX_TYPOS, length / LETTERS_PER_TYPO);
+    }
+
+    /**
+     * @return edit distance between the accepted form and the normalized answer
+     */
+    private int distance(int form, String answer, boolean skipBrackets) {
+        char[] alphabet = alphabets[form];
+        long[] mask = masks[form];
+        int length = forms[form].length;
+        long high = 1L << (length - 1);
+        long pv = -1;
+        long mv = 0;
+        int score = length;
+        int brackets = 0;
+        for (int i = 0; i < answer.length(); i++) {
+            char c = answer.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                brackets++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                brackets--;
+            } else if ((brackets == 0 || !skipBrackets) && Character.isLetterOrDigit(c)) {
+                int index = Arrays.binarySearch(alphabet, fold(c));
+                long eq = index < 0 ? 0 : mask[index];
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & high) != 0) {
+                    score++;
+                } else if ((mh & high) != 0) {
+                    score--;
+                }
+                ph = ph << 1 | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return normalized accepted answers, with and without the parts in brackets
+     */
+    public char[][] getForms() {
+        return forms;
+    }
+
+    private static boolean matches(char[] form, String answer, boolean skipBrackets) {
+        int at = 0;
+        int brackets = 0;
+        for (int i = 0; i < answer.length(); i++) {
+            char c = answer.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                brackets++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                brackets--;
+            } else if ((brackets == 0 || !skipBrackets) && Character.isLetterOrDigit(c)) {
+                if (at == form.length || form[at++] != fold(c)) {
+                    return false;
+                }
+            }
+        }
+        return at == form.length;
+    }
+
+    /**
+     * Same normalization as done on the fly for players' answers
+     */
+    public static char[] normalize(String answer, boolean skipBrackets) {
+        char[] result = new char[answer.length()];
+        int length = 0;
+        int brackets = 0;
+        for (int i = 0; i < answer.length(); i++) {
+            char c = answer.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                brackets++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                brackets--;
+            } else if ((brackets == 0 || !skipBrackets) && Character.isLetterOrDigit(c)) {
+                result[length++] = fold(c);
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    private static char fold(char c) {
+        c = Character.toLowerCase(c);
+        return c == 'ё' ? 'е' : c;
+    }
+}
@@ -0,0 +1,13 @@
+package net.egork.telegram.svoyak.data;
+
+/**
+ * Stage applied to accepted answers when a package is loaded and to players' answers before they are matched, so
+ * that different forms of the same answer compare equal.
+ *
+ * @author egor@egork.net
+ */
+public interface AnswerNormalizer {
+    AnswerNormalizer NONE = text -> text;
+
+    String normalize(String text);
+}
@@ -0,0 +1,61 @@
+package net.egork.telegram.svoyak.data;
+
+import net.egork.telegram.svoyak.Utils;
+
+/**
+ * Everything a game shows about a question, escaped and rendered once when the package is loaded.
+ *
+ * @author egor@egork.net
+ */
+public final class CompiledQuestion {
+    private final String text;
+    private final String hidden;
+    private final String answer;
+    private final String authorAnswer;
+
+    CompiledQuestion(String escapedTopicName, Question question) {
+        String header = "<b>Тема</b> " + escapedTopicName + "\n<b>" + question.cost + ".</b> ";
+        text = header + Utils.escape(question.question);
+        hidden = header + "Вопрос скрыт";
+        StringBuilder answers = new StringBuilder();
+        for (String answer : question.answers) {
+            if (answers.length() != 0) {
+                answers.append("\n<b>Зачет</b>: ");
+            }
+            answers.append(Utils.escape(answer));
+        }
+        if (!question.comment.isEmpty()) {
+            answers.append("\n<b>Комментарий</b>: ").append(Utils.escape(question.comment));
+        }
+        answer = "<b>Ответ:</b> " + answers;
+        authorAnswer = "<b>Авторский ответ</b>: " + answers;
+    }
+
+    /**
+     * Topic, cost and the question itself
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Topic and cost, shown while someone answers
+     */
+    public String getHidden() {
+        return hidden;
+    }
+
+    /**
+     * Author's answers and comment, shown when nobody answered right
+     */
+    public String getAnswer() {
+        return answer;
+    }
+
+    /**
+     * Author's answers and comment, shown after a right answer
+     */
+    public String getAuthorAnswer() {
+        return authorAnswer;
+    }
+}
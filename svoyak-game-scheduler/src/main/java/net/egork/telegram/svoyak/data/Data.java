@@ -1,6 +1,8 @@
 package net.egork.telegram.svoyak.data;
 
+import net.egork.telegram.Execution;
 import net.egork.telegram.svoyak.Utils;
+import net.egork.telegram.svoyak.game.Roster;
 import net.egork.telegram.svoyak.scheduler.TopicId;
 import org.jetbrains.annotations.NotNull;
 
@@ -15,6 +17,8 @@ public class Data {
     public static final long DAY = 24 * 60 * 60 * 1000L;
 
     private List<String> activePackages = new ArrayList<>();
+    private List<String> fuzzyPackages = new ArrayList<>();
+    private List<String> stemmingPackages = new ArrayList<>();
     private List<String> allPackages = new ArrayList<>();
     private Map<String, TopicSet> sets = new HashMap<>();
     private Map<Integer, Set<TopicId>> played = new HashMap<>();
@@ -26,6 +30,8 @@ public class Data {
     private Data() {
         loadList("active.list", activePackages);
         loadList("all.list", allPackages);
+        loadList("fuzzy.list", fuzzyPackages);
+        loadList("stemming.list", stemmingPackages);
         loadPlayers();
         loadSets();
         loadPlayed();
@@ -38,7 +44,7 @@ public class Data {
             BufferedReader reader = new BufferedReader(new FileReader("nextreset"));
             nextReset = Long.parseLong(reader.readLine());
         } catch (IOException | NumberFormatException e) {
-            Date now = new Date();
+            Date now = new Date(Execution.getClock().millis());
             now.setHours(0);
             now.setMinutes(0);
             now.setSeconds(0);
@@ -86,6 +92,10 @@ public class Data {
     }
 
     private void loadPlayers() {
+        if (!new File("player.list").exists()) {
+            // Fresh install, or a harness running without data files
+            return;
+        }
         try {
             BufferedReader reader = new BufferedReader(new FileReader("player.list"));
             String s;
@@ -121,6 +131,10 @@ public class Data {
         for (String s : allPackages) {
             try {
                 TopicSet set = TopicSet.parseReader(new BufferedReader(new FileReader(s)));
+                if (set != null) {
+                    set.fuzzy = fuzzyPackages.contains(s);
+                    set.stemming = stemmingPackages.contains(s);
+                }
                 sets.put(s, set);
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -163,6 +177,8 @@ public class Data {
     }
 
     public void addNewSet(String id, TopicSet set) {
+        set.fuzzy = fuzzyPackages.contains(id);
+        set.stemming = stemmingPackages.contains(id);
         sets.put(id, set);
         allPackages.remove(id);
         activePackages.remove(id);
@@ -256,6 +272,24 @@ public class Data {
         saveList("active.list", activePackages);
     }
 
+    public void setFuzzy(String set, boolean fuzzy) {
+        getSet(set).fuzzy = fuzzy;
+        fuzzyPackages.remove(set);
+        if (fuzzy) {
+            fuzzyPackages.add(set);
+        }
+        saveList("fuzzy.list", fuzzyPackages);
+    }
+
+    public void setStemming(String set, boolean stemming) {
+        getSet(set).stemming = stemming;
+        stemmingPackages.remove(set);
+        if (stemming) {
+            stemmingPackages.add(set);
+        }
+        saveList("stemming.list", stemmingPackages);
+    }
+
     public void commitPlayed() {
         savePlayed();
         saveUserFriendlyPlayed();
@@ -302,33 +336,28 @@ public class Data {
         return 1500;
     }
 
-    public void updateRatings(Map<Integer, Integer> score, Map<Integer, String> names) {
-        for (Map.Entry<Integer, String> entry : names.entrySet()) {
-            players.put(entry.getKey(), entry.getValue());
+    public void updateRatings(Roster roster) {
+        int size = roster.size();
+        int[] current = new int[size];
+        int[] updated = new int[size];
+        for (int i = 0; i < size; i++) {
+            players.put(roster.getId(i), roster.getName(i));
+            current[i] = getRating(roster.getId(i));
+            updated[i] = current[i];
         }
-        Map<Integer, Integer> updated = new HashMap<>();
-        for (Map.Entry<Integer, Integer> entry : score.entrySet()) {
-            updated.put(entry.getKey(), getRating(entry.getKey()));
-        }
-        for (Map.Entry<Integer, Integer> entry1 : score.entrySet()) {
-            for (Map.Entry<Integer, Integer> entry2 : score.entrySet()) {
-                if (entry1 == entry2) {
-                    break;
-                }
-                int ra = getRating(entry1.getKey());
-                int rb = getRating(entry2.getKey());
-                double ea = 1 / (1 + Math.pow(10, (rb - ra) / 400d));
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < i; j++) {
+                double ea = 1 / (1 + Math.pow(10, (current[j] - current[i]) / 400d));
                 double eb = 1 - ea;
-                double sa = entry1.getValue() < entry2.getValue() ? 0 : entry1.getValue() > entry2.getValue() ? 1 : 0.5;
+                double sa = roster.getScore(i) < roster.getScore(j) ? 0 : roster.getScore(i) > roster.getScore(j) ? 1 :
+                        0.5;
                 double sb = 1 - sa;
-                int da = (int) Math.round(10 * (sa - ea));
-                int db = (int) Math.round(10 * (sb - eb));
-                updated.put(entry1.getKey(), updated.get(entry1.getKey()) + da);
-                updated.put(entry2.getKey(), updated.get(entry2.getKey()) + db);
+                updated[i] += (int) Math.round(10 * (sa - ea));
+                updated[j] += (int) Math.round(10 * (sb - eb));
             }
         }
-        for (Map.Entry<Integer, Integer> entry : updated.entrySet()) {
-            rating.put(entry.getKey(), Math.max(1, entry.getValue()));
+        for (int i = 0; i < size; i++) {
+            rating.put(roster.getId(i), Math.max(1, updated[i]));
         }
         savePlayers();
     }
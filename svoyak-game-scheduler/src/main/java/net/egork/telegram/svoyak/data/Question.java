@@ -7,10 +7,17 @@ import java.util.List;
  * @author egor@egork.net
  */
 public class Question {
+    // Players' answers are normalized with the same stemmer in packages that allow it, stemming a short answer costs
+    // less than looking it up in a shared cache would
+    private static final AnswerNormalizer NORMALIZER = "none".equals(System.getProperty("answer.normalizer")) ?
+            AnswerNormalizer.NONE : new RussianStemmer();
+
     public int cost;
     public String question;
     List<String> answers;
     String comment;
+    private CompiledQuestion compiled;
+    private AnswerMatcher matcher;
 
     public Question(int cost, String question, List<String> answers) {
         this(cost, question, answers, "");
@@ -21,75 +28,39 @@ public class Question {
         this.question = question;
         this.answers = new ArrayList<>(answers);
         this.comment = comment;
-//        for (int i = 0; i < answers.size(); i++) {
-//            this.answers.set(i, fix(answers.get(i)));
-//        }
     }
 
-    private String fix(String s) {
-        return s.replace("<", "&lt;").replace(">", "&gt;").replace("&", "&amp;");
+    /**
+     * Renders the question for the topic it belongs to and prepares answer matching, done once by {@link Topic}
+     */
+    void compile(String escapedTopicName) {
+        compiled = new CompiledQuestion(escapedTopicName, this);
+        matcher = new AnswerMatcher(answers, NORMALIZER);
+    }
+
+    public CompiledQuestion compiled() {
+        return compiled;
     }
 
     public boolean checkAnswer(String answer) {
-        answer = answer.trim().toLowerCase();
-        for (String expected : answers) {
-            if (noSpace(expected, false).toLowerCase().equals(noSpace(answer, true))) {
-                return true;
-            }
-            if (noSpace(expected, true).toLowerCase().equals(noSpace(answer, true))) {
-                return true;
-            }
-            if (noSpace(expected, false).toLowerCase().equals(noSpace(answer, false))) {
-                return true;
-            }
-            if (noSpace(expected, true).toLowerCase().equals(noSpace(answer, false))) {
-                return true;
-            }
-        }
-        return false;
+        return getMatcher().matches(answer);
     }
 
-    private String noSpace(String answer, boolean skipParenthesis) {
-        StringBuilder builder = new StringBuilder();
-        int parentheses = 0;
-        for (int i = 0; i < answer.length(); i++) {
-            char c = answer.charAt(i);
-            if (c == '(' || c == '[' || c == '{') {
-                parentheses++;
-            } else if (c == ')' || c == ']' || c == '}') {
-                parentheses--;
-            } else if ((parentheses == 0 || !skipParenthesis) && Character.isLetterOrDigit(c)) {
-                if (c == 'ё' || c == 'Ё') {
-                    c = 'е';
-                }
-                builder.append(c);
-            }
-        }
-        return builder.toString();
+    /**
+     * Also logs answers that almost matched
+     *
+     * @param typos whether answers with a few typos are accepted
+     * @param stemming whether answers in another grammatical form are accepted
+     */
+    public boolean checkAnswer(String answer, boolean typos, boolean stemming) {
+        return getMatcher().matches(answer, typos, stemming);
     }
 
-    public String authorAnswers() {
-        StringBuilder result = new StringBuilder();
-        for (String answer : answers) {
-            if (result.length() != 0) {
-                result.append("\n<b>Зачет</b>: ");
-            }
-            result.append(answer);
-        }
-        if (!comment.isEmpty()) {
-            result.append("\n<b>Комментарий</b>: ");
-            result.append(comment);
-        }
-        return result.toString();
+    private AnswerMatcher getMatcher() {
+        return matcher != null ? matcher : new AnswerMatcher(answers, NORMALIZER);
     }
 
-    public Question fix() {
-        Question fixed = new Question(cost, question, answers, comment);
-        fixed.question = fix(question);
-        fixed.comment = fix(comment);
-        for (int i = 0; i < answers.size(); i++) {
-            fixed.answers.set(i, fix(answers.get(i)));
-        }
-        return fixed;
+    public List<String> getAnswers() {
+        return answers;
     }
 }
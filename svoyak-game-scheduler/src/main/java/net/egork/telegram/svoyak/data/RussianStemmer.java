@@ -0,0 +1,59 @@
+package net.egork.telegram.svoyak.data;
+
+/**
+ * Light stemmer for Russian: strips the longest case, number or gender ending from every word, so "Пушкина" and
+ * "Пушкиным" both become "пушкин". Words are lowercased with ё folded to е, everything else is kept as is. Stems are
+ * at least {@value #MIN_STEM} letters, so short words are left alone, and surname suffixes like -ов, -ев and -ин are
+ * never stripped, so "Иванов" doesn't become "Иван".
+ *
+ * @author egor@egork.net
+ */
+public class RussianStemmer implements AnswerNormalizer {
+    private static final int MIN_STEM = 4;
+    // Longest first, so the first match is the longest ending
+    private static final String[] ENDINGS = {
+            "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "иям", "иях", "ией", "ием",
+            "ах", "ях", "ам", "ям", "ом", "ем", "ой", "ей", "ою", "ею", "ий", "ый", "ая", "яя", "ое", "ее",
+            "ые", "ие", "ую", "юю", "ых", "их", "ым", "им", "ии", "ия", "ью",
+            "а", "я", "о", "е", "у", "ю", "ы", "и", "ь", "й"
+    };
+
+    @Override
+    public String normalize(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            if (!Character.isLetter(text.charAt(i))) {
+                result.append(text.charAt(i++));
+                continue;
+            }
+            int start = result.length();
+            while (i < text.length() && Character.isLetter(text.charAt(i))) {
+                char c = Character.toLowerCase(text.charAt(i++));
+                result.append(c == 'ё' ? 'е' : c);
+            }
+            result.setLength(result.length() - ending(result, start));
+        }
+        return result.toString();
+    }
+
+    private static int ending(StringBuilder word, int start) {
+        int length = word.length() - start;
+        for (String ending : ENDINGS) {
+            if (length - ending.length() >= MIN_STEM && endsWith(word, ending)) {
+                return ending.length();
+            }
+        }
+        return 0;
+    }
+
+    private static boolean endsWith(StringBuilder word, String ending) {
+        int offset = word.length() - ending.length();
+        for (int i = 0; i < ending.length(); i++) {
+            if (word.charAt(offset + i) != ending.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
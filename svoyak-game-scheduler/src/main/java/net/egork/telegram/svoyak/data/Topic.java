@@ -1,5 +1,7 @@
 package net.egork.telegram.svoyak.data;
 
+import net.egork.telegram.svoyak.Utils;
+
 import java.util.List;
 
 /**
@@ -7,11 +9,19 @@ import java.util.List;
  */
 public class Topic {
     public String topicName;
+    /**
+     * Name ready to be put into HTML messages, escaped once when the package is loaded
+     */
+    public final String escapedName;
     public List<Question> questions;
 
     public Topic(String topicName, List<Question> questions) {
         this.topicName = topicName;
         this.questions = questions;
+        escapedName = Utils.escape(topicName);
+        for (Question question : questions) {
+            question.compile(escapedName);
+        }
     }
 
     public Question next(Question current) {
@@ -2,6 +2,7 @@ package net.egork.telegram.svoyak.data;
 
 //import org.apache.commons.lang.StringEscapeUtils;
 
+import net.egork.telegram.svoyak.Utils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -19,12 +20,27 @@ import java.util.List;
 public class TopicSet {
     public String shortName;
     public String description;
+    /**
+     * Name and description ready to be put into HTML messages, escaped once when the package is loaded
+     */
+    public final String escapedName;
+    public final String escapedDescription;
     public List<Topic> topics;
+    /**
+     * Whether answers with a few typos are accepted, set per package by the admin
+     */
+    public boolean fuzzy;
+    /**
+     * Whether answers in another grammatical form are accepted, set per package by the admin
+     */
+    public boolean stemming;
 
     public TopicSet(String shortName, String description, List<Topic> topics) {
         this.shortName = shortName;
         this.description = description;
         this.topics = topics;
+        escapedName = Utils.escape(shortName);
+        escapedDescription = description == null ? null : Utils.escape(description);
     }
 
     public Topic byIndex(int index) {
@@ -0,0 +1,200 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.Execution;
+import net.egork.telegram.Priority;
+import net.egork.telegram.TelegramBot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Mirrors a room's game to read-only subscriber chats and channels. The game publishes each event once and returns,
+ * the fan-out happens on a background thread shared by all rooms, and everything goes out in the low lane, so the room
+ * itself is always served first.
+ * <p>
+ * Each subscriber has at most one message in flight. Events that arrive meanwhile wait, and once the message is sent
+ * they are merged into one. A subscriber that falls too far behind ({@code broadcast.backlog} events) loses the
+ * oldest minor events first, then the oldest of the rest. Subscribers whose messages keep failing are dropped.
+ * <p>
+ * Subscriptions are kept in a file, one chat id per line, so they survive restarts.
+ *
+ * @author egor@egork.net
+ */
+public class Broadcast {
+    private static final Logger logger = LogManager.getLogger(Broadcast.class);
+    private static final ExecutorService fanOut = Execution.newSerialExecutor("Broadcast");
+    private static final int BACKLOG = Integer.parseInt(System.getProperty("broadcast.backlog", "16"));
+    private static final int MAX_LENGTH = 4096;
+    private static final int MAX_FAILURES = 3;
+
+    private final long roomId;
+    private final File file;
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private volatile int merged;
+    private volatile int dropped;
+
+    /**
+     * @param file where subscriptions are kept, null to keep them in memory only
+     */
+    public Broadcast(long roomId, File file) {
+        this.roomId = roomId;
+        this.file = file;
+        if (file != null && file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String s;
+                while ((s = reader.readLine()) != null) {
+                    if (!s.trim().isEmpty()) {
+                        long chatId = Long.parseLong(s.trim());
+                        subscribers.put(chatId, new Subscriber(chatId));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.error(e);
+            }
+        }
+    }
+
+    public void subscribe(long chatId) {
+        fanOut.execute(() -> {
+            if (chatId != roomId && !subscribers.containsKey(chatId)) {
+                subscribers.put(chatId, new Subscriber(chatId));
+                save();
+            }
+        });
+    }
+
+    public void unsubscribe(long chatId) {
+        fanOut.execute(() -> {
+            if (subscribers.remove(chatId) != null) {
+                save();
+            }
+        });
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(file)) {
+            for (long chatId : subscribers.keySet()) {
+                out.println(chatId);
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Queues the event for every subscriber, returns immediately
+     *
+     * @param priority {@link Priority#LOW} marks minor events that may be dropped for subscribers that fall behind
+     */
+    public void publish(TelegramBot bot, String text, Priority priority) {
+        Event event = new Event(text, priority);
+        fanOut.execute(() -> {
+            for (Subscriber subscriber : subscribers.values()) {
+                subscriber.offer(bot, event);
+            }
+        });
+    }
+
+    /**
+     * Number of events that were sent together with others instead of on their own
+     */
+    public int getMerged() {
+        return merged;
+    }
+
+    /**
+     * Number of events that were never sent because subscribers fell behind
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    public List<Long> getSubscribers() {
+        return new ArrayList<>(subscribers.keySet());
+    }
+
+    private class Subscriber {
+        private final long chatId;
+        private final ArrayDeque<Event> pending = new ArrayDeque<>();
+        private boolean inFlight;
+        private int failures;
+
+        private Subscriber(long chatId) {
+            this.chatId = chatId;
+        }
+
+        private void offer(TelegramBot bot, Event event) {
+            pending.add(event);
+            if (pending.size() > BACKLOG) {
+                dropOne();
+            }
+            if (!inFlight) {
+                sendNext(bot);
+            }
+        }
+
+        private void dropOne() {
+            Iterator<Event> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().priority == Priority.LOW) {
+                    iterator.remove();
+                    dropped++;
+                    return;
+                }
+            }
+            pending.poll();
+            dropped++;
+        }
+
+        private void sendNext(TelegramBot bot) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            StringBuilder text = new StringBuilder(pending.poll().text);
+            while (!pending.isEmpty() && text.length() + 2 + pending.peek().text.length() <= MAX_LENGTH) {
+                text.append("\n\n").append(pending.poll().text);
+                merged++;
+            }
+            inFlight = true;
+            bot.sendMessage(chatId, text.toString(), Priority.LOW).thenAcceptAsync(id -> {
+                inFlight = false;
+                if (id == 0) {
+                    if (++failures >= MAX_FAILURES) {
+                        if (subscribers.remove(chatId, this)) {
+                            save();
+                        }
+                        return;
+                    }
+                } else {
+                    failures = 0;
+                }
+                sendNext(bot);
+            }, fanOut);
+        }
+    }
+
+    private static class Event {
+        private final String text;
+        private final Priority priority;
+
+        private Event(String text, Priority priority) {
+            this.text = text;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.svoyak.data.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects buzzer presses for a short window after the first one and picks the earliest. Presses are ordered by
+ * Telegram's message date first (seconds, but assigned when Telegram got the message), then by the time the bot
+ * received them, so polling batches and queueing don't decide who answers.
+ *
+ * @author egor@egork.net
+ */
+public class BuzzerArbiter {
+    private static final Logger logger = LogManager.getLogger(BuzzerArbiter.class);
+    private static final Comparator<Press> ORDER =
+            Comparator.<Press>comparingInt(press -> press.date).thenComparingLong(press -> press.receivedAt);
+
+    private final long chatId;
+    private final long window;
+    private final List<Press> presses = new ArrayList<>();
+    private long questionShown;
+    private int round;
+
+    public BuzzerArbiter(long chatId) {
+        this.chatId = chatId;
+        window = Long.parseLong(System.getProperty("buzzer.window", "200"));
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Reaction times are measured from the moment the question was delivered
+     */
+    public void questionShown(long at) {
+        questionShown = at;
+    }
+
+    /**
+     * @return true if the press opened a new window, the caller should decide once it passes
+     */
+    public boolean press(User user, int date, long receivedAt) {
+        for (Press press : presses) {
+            if (press.user.getId() == user.getId()) {
+                return false;
+            }
+        }
+        presses.add(new Press(user, date, receivedAt));
+        return presses.size() == 1;
+    }
+
+    public boolean hasPresses() {
+        return !presses.isEmpty();
+    }
+
+    /**
+     * Identifies the current window, to recognize decisions scheduled for a window that has already been decided
+     */
+    public int getRound() {
+        return round;
+    }
+
+    /**
+     * @return the earliest press of the window, null if there were none
+     */
+    public User decide() {
+        if (presses.isEmpty()) {
+            return null;
+        }
+        Collections.sort(presses, ORDER);
+        Press winner = presses.get(0);
+        for (Press press : presses) {
+            logger.info("Buzzer in " + chatId + ": " + press.user.getId() + " " + press.user.getFirstName() +
+                    " reaction " + (press.receivedAt - questionShown) + "ms" + (press == winner ? ", won" :
+                    ", behind by " + (press.receivedAt - winner.receivedAt) + "ms"));
+        }
+        presses.clear();
+        round++;
+        return winner.user;
+    }
+
+    private static class Press {
+        private final User user;
+        private final int date;
+        private final long receivedAt;
+
+        private Press(User user, int date, long receivedAt) {
+            this.user = user;
+            this.date = date;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
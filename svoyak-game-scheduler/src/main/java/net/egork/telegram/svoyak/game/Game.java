@@ -1,11 +1,15 @@
 package net.egork.telegram.svoyak.game;
 
+import net.egork.telegram.Clock;
+import net.egork.telegram.Priority;
+import net.egork.telegram.TimerWheel;
 import net.egork.telegram.svoyak.Utils;
 import net.egork.telegram.svoyak.data.Question;
 import net.egork.telegram.svoyak.data.Topic;
 import net.egork.telegram.svoyak.data.TopicSet;
 import net.egork.telegram.svoyak.scheduler.GameChat;
-import net.egork.telegram.svoyak.scheduler.SchedulerMain;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.telegram.telegrambots.api.objects.Message;
 import org.telegram.telegrambots.api.objects.User;
@@ -15,18 +19,17 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 /**
  * @author egor@egork.net
  */
 public class Game implements Runnable {
+    private static final Logger logger = LogManager.getLogger(Game.class);
     private static final String[] PLUS = {"+"};
     private static final String[] YES_NO = {"да", "нет"};
     private static final String[] BREAK = {"да", "нет", "пауза"};
     private static final String[] PAUSED = {"да", "нет", "продолжить"};
-    private static final long RATE = 100;
     private static final long INTERMISSION = 8000;
     private static final long SUCCESSIVE_QUESTION = 10000;
     private static final long FIRST_QUESTION = 15000;
@@ -54,10 +57,10 @@ public class Game implements Runnable {
         GameChat.saveData(pw, "topic id", topicId);
         GameChat.saveData(pw, "question cost", currentQuestion == null ? 10 : currentQuestion.cost);
         GameChat.saveData(pw, "orig chat id", origChatId);
-        GameChat.saveData(pw, "score", score.size());
-        for (Map.Entry<Integer, Integer> entry : score.entrySet()) {
-            GameChat.saveData(pw, "id", entry.getKey());
-            GameChat.saveData(pw, "pts", entry.getValue());
+        GameChat.saveData(pw, "score", roster.size());
+        for (int i = 0; i < roster.size(); i++) {
+            GameChat.saveData(pw, "id", roster.getId(i));
+            GameChat.saveData(pw, "pts", roster.getScore(i));
         }
     }
 
@@ -74,28 +77,104 @@ public class Game implements Runnable {
         origChatId = Long.parseLong(GameChat.readData(br, "orig chat id"));
         this.players = players;
         for (net.egork.telegram.svoyak.data.User player : players) {
-            users.put(player.getId(), getName(player));
+            seatPlayer(player);
         }
         int scoreSize = Integer.parseInt(GameChat.readData(br, "score"));
         for (int i = 0; i < scoreSize; i++) {
             int id = Integer.parseInt(GameChat.readData(br, "id"));
             int pts = Integer.parseInt(GameChat.readData(br, "pts"));
-            score.put(id, pts);
+            int seat = seat(id);
+            if (seat != -1) {
+                roster.add(seat, pts);
+            }
         }
+    }
+
+    /**
+     * Replays the events journaled after the snapshot and resumes the game paused, right after the last event
+     */
+    public void resume(List<String> events) {
         executor.execute(new Runnable() {
             @Override
             public void run() {
                 stopAt = topics.size();
-                state = State.BEFORE_QUESTION;
                 paused = true;
-                sendMessage("Игра возобновлена после перезапуска бота. Если результаты последнего вопроса не были внесены, воспользуйтесь функцией исправления. Игра находится на паузе", null, 600000);
-                timer = new Timer();
-                timer.scheduleAtFixedRate(new TimerTask() {
-                    @Override
-                    public void run() {
-                        executor.execute(Game.this);
+                boolean asked = false;
+                boolean counted = false;
+                boolean topicAdvanced = false;
+                for (String event : events) {
+                    String[] tokens = event.split(" ");
+                    try {
+                        switch (tokens[0]) {
+                        case "question":
+                            topicId = Integer.parseInt(tokens[1]);
+                            currentTopic = set.byIndex(topics.get(topicId));
+                            currentQuestion = currentTopic.byCost(Integer.parseInt(tokens[2]));
+                            roster.newQuestion();
+                            asked = true;
+                            counted = false;
+                            topicAdvanced = false;
+                            break;
+                        case "verdict":
+                            roster.answered(seat(Integer.parseInt(tokens[1])));
+                            if (tokens[2].equals("1")) {
+                                roster.setCorrect(seat(Integer.parseInt(tokens[1])));
+                            }
+                            break;
+                        case "fix":
+                            roster.setCorrect(seat(Integer.parseInt(tokens[1])));
+                            break;
+                        case "discard":
+                            roster.setCorrect(-1);
+                            break;
+                        case "results":
+                            addResults();
+                            counted = true;
+                            break;
+                        case "score":
+                            roster.add(seat(Integer.parseInt(tokens[1])), Integer.parseInt(tokens[2]));
+                            break;
+                        case "topic":
+                            topicId = Integer.parseInt(tokens[1]);
+                            topicAdvanced = true;
+                            break;
+                        }
+                    } catch (RuntimeException e) {
+                        // Last line may be cut short by the crash
+                        logger.error("Bad journal event for " + gameChat.chatId + ": " + event);
+                        break;
+                    }
+                }
+                updateScoreboard();
+                if (!asked && topicAdvanced) {
+                    // Journal was compacted when the topic ended
+                    setState(State.BEFORE_TOPIC);
+                    sendMessage("Игра возобновлена после перезапуска бота. Игра находится на паузе", null, 600000);
+                    return;
+                }
+                if (!asked) {
+                    setState(State.BEFORE_QUESTION);
+                    sendMessage("Игра возобновлена после перезапуска бота. Если результаты последнего вопроса не " +
+                            "были внесены, воспользуйтесь функцией исправления. Игра находится на паузе", null, 600000);
+                    return;
+                }
+                if (!counted) {
+                    setState(State.AFTER_QUESTION);
+                    sendMessage("Игра возобновлена после перезапуска бота, ответы на последний вопрос " +
+                            "восстановлены. Игра находится на паузе", PAUSED, 600000);
+                    return;
+                }
+                Question next = currentTopic.next(currentQuestion);
+                if (next == null) {
+                    if (!topicAdvanced) {
+                        topicId++;
                     }
-                }, RATE, RATE);
+                    setState(State.BEFORE_TOPIC);
+                } else {
+                    currentQuestion = next;
+                    setState(State.BEFORE_QUESTION);
+                }
+                sendMessage("Игра возобновлена после перезапуска бота. Игра находится на паузе", null, 600000);
             }
         });
     }
@@ -120,61 +199,91 @@ public class Game implements Runnable {
     private int topicId;
     private int stopAt;
 
-    private Map<Integer, String> users = new HashMap<Integer, String>();
-    private Map<Integer, Integer> score = new HashMap<Integer, Integer>();
-
-    private Set<Integer> presentPlayers = new HashSet<>();
+    private final Roster roster = new Roster();
     private int minutesWaited;
 
-    private List<Integer> answers = new ArrayList<>();
-    private int correct;
-
     private long actionExpires;
     private State state;
     private net.egork.telegram.svoyak.data.User current;
 
     private long origChatId;
     private final GameChat gameChat;
-    private SchedulerMain scheduler;
+    private final GameHost scheduler;
+    private final Clock clock;
     private List<net.egork.telegram.svoyak.data.User> players;
     private List<Integer> topics;
 
-    private volatile Executor executor = Executors.newSingleThreadExecutor();
+    private final Executor executor;
 
-    private Timer timer;
+    private TimerWheel.Timeout wake;
+    private final BuzzerArbiter buzzer;
+    private final Scoreboard scoreboard;
+    private boolean finished;
     private int lastQuestionId;
 
-    public Game(SchedulerMain scheduler, GameChat gameChat, TopicSet set) {
+    public Game(GameHost scheduler, GameChat gameChat, TopicSet set) {
         this.scheduler = scheduler;
+        clock = scheduler.getClock();
         this.gameChat = gameChat;
         this.set = set;
         tournamentGame = false;
+        executor = GameRuntime.newMailbox();
+        buzzer = new BuzzerArbiter(gameChat.chatId);
+        scoreboard = new Scoreboard(scheduler.getGameBot(), gameChat.chatId, clock, executor);
+    }
+
+    /**
+     * Stops the game clock, the game can't be used afterwards
+     */
+    public void close() {
+        executor.execute(() -> {
+            finished = true;
+            expireAt(Long.MAX_VALUE);
+            scoreboard.close();
+        });
     }
 
-    public Game(SchedulerMain scheduler, long originalChatId, GameChat chat, TopicSet set, List<Integer> topics,
+    /**
+     * Sets the moment the current state times out and makes sure the game wakes up exactly then
+     */
+    private void expireAt(long at) {
+        if (finished) {
+            at = Long.MAX_VALUE;
+        }
+        actionExpires = at;
+        if (wake != null) {
+            wake.cancel();
+            wake = null;
+        }
+        if (at != Long.MAX_VALUE) {
+            TimerWheel.Timeout[] scheduled = new TimerWheel.Timeout[1];
+            scheduled[0] = clock.schedule(() -> executor.execute(() -> {
+                // Ignore wakes that were superseded after they had already fired
+                if (wake == scheduled[0]) {
+                    wake = null;
+                    run();
+                }
+            }), at - clock.millis());
+            wake = scheduled[0];
+        }
+    }
+
+    public Game(GameHost scheduler, long originalChatId, GameChat chat, TopicSet set, List<Integer> topics,
             List<net.egork.telegram.svoyak.data.User> players) {
         this(scheduler, chat, set);
         this.players = players;
         origChatId = originalChatId;
         this.topics = topics;
         for (net.egork.telegram.svoyak.data.User user : players) {
-            users.put(user.getId(), getName(user));
-            add(user.getId(), 0);
+            seatPlayer(user);
         }
         executor.execute(new Runnable() {
             @Override
             public void run() {
                 topicId = 0;
                 stopAt = topics.size();
-                state = State.BEFORE_GAME;
+                setState(State.BEFORE_GAME);
                 sendMessage("Добро пожаловать", null, 60000);
-                timer = new Timer();
-                timer.scheduleAtFixedRate(new TimerTask() {
-                    @Override
-                    public void run() {
-                        executor.execute(Game.this);
-                    }
-                }, RATE, RATE);
                 gameChat.saveState();
             }
         });
@@ -188,16 +297,30 @@ public class Game implements Runnable {
         StringBuilder list = new StringBuilder();
         list.append("<b>Список тем:</b>\n");
         for (int i = topicId; i < stopAt; i++) {
-            list.append((topics.get(i) + 1) + ". " + set.byIndex(topics.get(i)).topicName + "\n");
+            list.append((topics.get(i) + 1) + ". " + set.byIndex(topics.get(i)).escapedName + "\n");
         }
-        sendMessage("Игра началась. " + set.shortName + "\n" + set.description + "\n" + list.toString()
-                + "\n\nИгроки: " + Utils.userList(players), null, INTERMISSION);
-        state = State.BEFORE_TOPIC;
+        String text = "Игра началась. " + set.escapedName + "\n" + set.escapedDescription + "\n" + list.toString() +
+                "\n\nИгроки: " + Utils.userList(players);
+        sendMessage(text, null, INTERMISSION);
+        publish(text, Priority.NORMAL);
+        setState(State.BEFORE_TOPIC);
     }
 
     private void sendMessage(String text, String[] keyboard, long delay) {
-        actionExpires = Long.MAX_VALUE;
-        scheduler.getGameBot().sendMessage(gameChat.chatId, text, keyboard, new CallBack(delay));
+        sendMessage(text, keyboard, delay, Priority.NORMAL);
+    }
+
+    private void sendMessage(String text, String[] keyboard, long delay, Priority priority) {
+        expireAt(Long.MAX_VALUE);
+        scheduler.getGameBot().sendMessage(gameChat.chatId, text, keyboard, priority).thenAccept(new CallBack(delay));
+    }
+
+    /**
+     * Mirrors an event to the spectator chats, question edits and messages that only matter to the room are not
+     * published
+     */
+    private void publish(String text, Priority priority) {
+        gameChat.getBroadcast().publish(scheduler.getBroadcastBot(), text, priority);
     }
 
     private void editMessage(String text) {
@@ -206,7 +329,7 @@ public class Game implements Runnable {
 
     @Override
     public void run() {
-        if (System.currentTimeMillis() >= actionExpires) {
+        if (clock.millis() >= actionExpires) {
             if (paused) {
                 paused = false;
                 sendMessage("Игра возобновлена", state == State.AFTER_QUESTION ? BREAK : null, INTERMISSION);
@@ -214,19 +337,29 @@ public class Game implements Runnable {
             }
             switch (state) {
             case BEFORE_QUESTION:
-                actionExpires = Long.MAX_VALUE;
-                scheduler.getGameBot().sendMessage(gameChat.chatId, getQuestionText(), EMPTY, id -> {
+                expireAt(Long.MAX_VALUE);
+                scheduler.getGameBot().sendMessage(gameChat.chatId, getQuestionText(), EMPTY, Priority.HIGH)
+                        .thenAcceptAsync(id -> {
+                    if (state != State.BEFORE_QUESTION || finished) {
+                        // The game was aborted or closed while the question was on its way
+                        return;
+                    }
+                    // Spectators sit in the lobbies, they mustn't see the question before the players do
+                    publish(getQuestionText(), Priority.NORMAL);
+                    // Buzzes are only accepted once the question is out, so edits always know its id
                     lastQuestionId = id;
+                    buzzer.questionShown(clock.millis());
+                    setState(State.QUESTION);
                     if (!paused) {
-                        actionExpires = System.currentTimeMillis() + FIRST_QUESTION;
+                        expireAt(clock.millis() + FIRST_QUESTION);
                     } else {
-                        actionExpires = Math.max(actionExpires, System.currentTimeMillis() + FIRST_QUESTION);
+                        expireAt(Math.max(actionExpires, clock.millis() + FIRST_QUESTION));
                     }
-                });
-                state = State.QUESTION;
+                }, executor);
                 return;
             case AFTER_GAME:
-                timer.cancel();
+                finished = true;
+                expireAt(Long.MAX_VALUE);
                 scheduler.kickUsers(gameChat.chatId);
                 return;
             case BEFORE_GAME:
@@ -246,11 +379,13 @@ public class Game implements Runnable {
                 }
                 currentTopic = set.byIndex(topics.get(topicId));
                 int remaining = stopAt - topicId;
-                sendMessage((lastTopic() ? "Последняя тема" : "Осталось " + remaining + " " +
+                String announcement = (lastTopic() ? "Последняя тема" : "Осталось " + remaining + " " +
                         getTopicWord(remaining)) + "\n" +
-                        "<b>Тема " + (set.topics.indexOf(currentTopic) + 1) + ":</b> " + currentTopic.topicName, null,
-                        INTERMISSION);
-                state = State.BEFORE_FIRST_QUESTION;
+                        "<b>Тема " + (set.topics.indexOf(currentTopic) + 1) + ":</b> " +
+                        currentTopic.escapedName;
+                sendMessage(announcement, null, INTERMISSION);
+                publish(announcement, Priority.NORMAL);
+                setState(State.BEFORE_FIRST_QUESTION);
                 break;
             case BEFORE_FIRST_QUESTION:
                 currentQuestion = currentTopic.first();
@@ -258,18 +393,21 @@ public class Game implements Runnable {
                 break;
             case AFTER_QUESTION:
                 addResults();
+                gameChat.record("results");
+                updateScoreboard();
                 currentQuestion = currentTopic.next(currentQuestion);
-                if (currentQuestion != null) {
-                    currentQuestion.fix();
-                }
-                gameChat.saveState();
                 if (currentQuestion == null) {
                     topicId++;
+                    if (topicId < topics.size()) {
+                        // Replay only ever needs the current topic, the snapshot covers the ones before
+                        gameChat.saveState();
+                    }
+                    gameChat.record("topic " + topicId);
                     showScore();
-                    state = State.BEFORE_TOPIC;
+                    setState(State.BEFORE_TOPIC);
                 } else if (lastTopic() && currentQuestion.cost == 50) {
                     showScore();
-                    state = State.SPECIAL_SCORE;
+                    setState(State.SPECIAL_SCORE);
                 } else {
                     askQuestion();
                 }
@@ -278,33 +416,63 @@ public class Game implements Runnable {
                 askQuestion();
                 break;
             case QUESTION:
-                sendMessage("<b>Ответ:</b> " + currentQuestion.authorAnswers(), BREAK, INTERMISSION);
-                state = State.AFTER_QUESTION;
+                if (buzzer.hasPresses()) {
+                    // Pressed before the time ran out, the window just hasn't closed yet
+                    decideBuzz();
+                    break;
+                }
+                sendMessage(currentQuestion.compiled().getAnswer(), BREAK, INTERMISSION);
+                publish(currentQuestion.compiled().getAnswer(), Priority.NORMAL);
+                setState(State.AFTER_QUESTION);
                 break;
             case ANSWER:
                 editMessage(getQuestionText());
                 sendMessage("Время вышло, " + getName(current), PLUS, SUCCESSIVE_QUESTION);
-                state = State.QUESTION;
-                answers.add(current.getId());
+                publish("Время вышло, " + getName(current), Priority.LOW);
+                gameChat.record("verdict " + current.getId() + " 0");
+                setState(State.QUESTION);
+                roster.answered(roster.seatOf(current.getId()));
                 current = null;
                 break;
             }
+        } else if (wake == null && actionExpires != Long.MAX_VALUE) {
+            // Woken up early, wait for the rest
+            expireAt(actionExpires);
         }
     }
 
-    @NotNull
+    private void setState(State state) {
+        State from = this.state;
+        this.state = state;
+        scheduler.stateChanged(this, from, state);
+    }
+
+    public Question getCurrentQuestion() {
+        return currentQuestion;
+    }
+
+    /**
+     * @return player who is answering the question now, if any
+     */
+    public net.egork.telegram.svoyak.data.User getCurrentPlayer() {
+        return current;
+    }
+
+    public long getChatId() {
+        return gameChat.chatId;
+    }
+
     private String getQuestionText() {
-        return "<b>Тема</b> " + currentTopic.topicName + "\n<b>" +
-                currentQuestion.cost + ".</b> " + currentQuestion.question;
+        return currentQuestion.compiled().getText();
     }
 
     private void askQuestion() {
 //        sendMessage("<b>Тема</b> " + currentTopic.topicName + "\n<b>" +
 //                currentQuestion.cost + ".</b> " + currentQuestion.question, PLUS, FIRST_QUESTION);
         sendMessage("Внимание, вопрос", PLUS, 1000);
-        state = State.BEFORE_QUESTION;
-        answers = new ArrayList<>();
-        correct = 0;
+        setState(State.BEFORE_QUESTION);
+        roster.newQuestion();
+        gameChat.record("question " + topicId + " " + currentQuestion.cost);
     }
 
     private boolean lastTopic() {
@@ -321,71 +489,55 @@ public class Game implements Runnable {
         return "темы";
     }
 
-    private static class ScoreEntry implements Comparable<ScoreEntry> {
-        int score;
-        String name;
-
-        public ScoreEntry(int score, String name) {
-            this.score = score;
-            this.name = name;
-        }
-
-        @Override
-        public int compareTo(ScoreEntry o) {
-            return o.score - score;
-        }
-    }
-
     private void showScore() {
-        if (score.isEmpty()) {
+        if (roster.isEmpty()) {
             sendMessage("Счет не открыт.", null, INTERMISSION);
             return;
         }
-        StringBuilder score = getScores();
-        sendMessage((topicId == stopAt ? "<b>Финальный" : "<b>Текущий") + " счет:</b>\n" + score.toString(), null,
-                INTERMISSION);
+        StringBuilder score = new StringBuilder(topicId == stopAt ? "<b>Финальный" : "<b>Текущий").append(
+                " счет:</b>\n");
+        roster.appendScores(score);
+        publish(score.toString(), Priority.NORMAL);
+        if (topicId != stopAt && scoreboard.isPinned()) {
+            // The room follows the score on the scoreboard
+            expireAt(clock.millis());
+            return;
+        }
+        sendMessage(score.toString(), null, INTERMISSION);
     }
 
-    @NotNull
-    private StringBuilder getScores() {
-        StringBuilder score = new StringBuilder();
-        List<ScoreEntry> entries = new ArrayList<>();
-        for (Map.Entry<Integer, String> entry : users.entrySet()) {
-            add(entry.getKey(), 0);
-            entries.add(new ScoreEntry(this.score.get(entry.getKey()), entry.getValue()));
-        }
-        Collections.sort(entries);
-        for (ScoreEntry entry : entries) {
-            score.append(entry.name + " " + entry.score + "\n");
+    private void updateScoreboard() {
+        if (!roster.isEmpty()) {
+            scoreboard.update(roster.appendScores(new StringBuilder("<b>Счет:</b>\n")).toString());
         }
-        return score;
     }
 
     private void endGame(boolean aborted) {
-        state = State.AFTER_GAME;
+        setState(State.AFTER_GAME);
         paused = false;
         sendMessage("Игра окончена!", null, 3000);
+        publish("Игра окончена!", Priority.NORMAL);
         sendMessage("Вскоре бот удалит всех игроков из этой комнаты.\n" +
                     "Пожалуйста, не выходите самостоятельно!", null, 60000);
-        scheduler.endGame(origChatId, set, score, users, aborted);
+        scheduler.endGame(origChatId, set, roster, aborted);
         gameChat.removeSavedState();
     }
 
-    public void process(Message message) {
+    public void process(Message message, long receivedAt) {
         executor.execute(new Runnable() {
             @Override
             public void run() {
                 User newChatMember = message.getNewChatMember();
-                if (state == State.BEFORE_GAME && newChatMember != null && users.containsKey(newChatMember.getId())) {
-                    presentPlayers.add(newChatMember.getId());
-                    if (presentPlayers.size() == users.size()) {
+                int joined = newChatMember == null ? -1 : roster.seatOf(newChatMember.getId());
+                if (state == State.BEFORE_GAME && joined != -1) {
+                    if (roster.markPresent(joined)) {
                         minutesWaited = 5;
                         sendMessage("Игра скоро начнется", null, 15000);
                     }
                     return;
                 }
                 if (state == State.AFTER_GAME) {
-                    actionExpires = Math.max(actionExpires, System.currentTimeMillis() + 60000);
+                    expireAt(Math.max(actionExpires, clock.millis() + 60000));
                     return;
                 }
                 String text = message.getText();
@@ -401,9 +553,12 @@ public class Game implements Runnable {
                         judgeId = message.getFrom().getId();
                         sendMessage("Судья зарегестрирован", null);
                     } else if (text.equals("регистрация")) {
-                        users.put(message.getFrom().getId(), getName(new net.egork.telegram.svoyak.data.User(message.getFrom())));
-                        score.put(message.getFrom().getId(), 0);
-                        sendMessage("Игрок зарегестрирован", null);
+                        if (roster.seat(message.getFrom().getId(), getName(new net.egork.telegram.svoyak.data.User(
+                                message.getFrom()))) == -1) {
+                            sendMessage("Регистрация закрыта, все " + Roster.MAX_SEATS + " мест заняты", null);
+                        } else {
+                            sendMessage("Игрок зарегестрирован", null);
+                        }
                     } else if (text.equals("старт") && message.getFrom().getId() == judgeId) {
                         startGame();
                     }
@@ -411,16 +566,21 @@ public class Game implements Runnable {
                 }
                 if (state == State.JUDGE_DECISION && message.getFrom().getId() == judgeId) {
                     if (text.equals("да")) {
-                        sendMessage("Это правильный ответ, " + getName(current) + "\n" +
-                                "<b>Авторский ответ</b>: " + currentQuestion.authorAnswers(), null, INTERMISSION);
-                        correct = current.getId();
+                        String verdict = "Это правильный ответ, " + getName(current) + "\n" +
+                                currentQuestion.compiled().getAuthorAnswer();
+                        sendMessage(verdict, null, INTERMISSION);
+                        publish(verdict, Priority.NORMAL);
+                        roster.setCorrect(roster.seatOf(current.getId()));
+                        gameChat.record("verdict " + current.getId() + " 1");
                         current = null;
-                        state = State.AFTER_QUESTION;
+                        setState(State.AFTER_QUESTION);
                     } else if (text.equals("нет")) {
-                        sendMessage("Это неправильный ответ, " + getName(current), PLUS, answers.size() == users.size
-                                () ? 0 : SUCCESSIVE_QUESTION);
+                        sendMessage("Это неправильный ответ, " + getName(current), PLUS, roster.getAnswerCount() ==
+                                roster.size() ? 0 : SUCCESSIVE_QUESTION);
+                        publish("Это неправильный ответ, " + getName(current), Priority.LOW);
+                        gameChat.record("verdict " + current.getId() + " 0");
                         current = null;
-                        state = State.QUESTION;
+                        setState(State.QUESTION);
                     }
                     return;
                 }
@@ -429,24 +589,31 @@ public class Game implements Runnable {
                         return;
                     }
                     if (tournamentGame) {
-                        state = State.JUDGE_DECISION;
-                        answers.add(current.getId());
-                        actionExpires = Long.MAX_VALUE;
+                        setState(State.JUDGE_DECISION);
+                        roster.answered(roster.seatOf(current.getId()));
+                        expireAt(Long.MAX_VALUE);
                         sendMessage("Ответ принят: " + text + ".\nРешение судьи?", YES_NO);
-                    } else if (currentQuestion.checkAnswer(text)) {
+                    } else if (currentQuestion.checkAnswer(text, set.fuzzy, set.stemming)) {
                         editMessage(getQuestionText());
-                        sendMessage("Это правильный ответ, " + getName(new net.egork.telegram.svoyak.data.User(message.getFrom())) + "\n" +
-                                "<b>Авторский ответ</b>: " + currentQuestion.authorAnswers(), BREAK, INTERMISSION);
-                        answers.add(current.getId());
-                        correct = current.getId();
+                        String verdict = "Это правильный ответ, " + getName(new net.egork.telegram.svoyak.data.User(
+                                message.getFrom())) + "\n" + currentQuestion.compiled().getAuthorAnswer();
+                        sendMessage(verdict, BREAK, INTERMISSION);
+                        publish(verdict, Priority.NORMAL);
+                        roster.answered(roster.seatOf(current.getId()));
+                        roster.setCorrect(roster.seatOf(current.getId()));
+                        gameChat.record("verdict " + current.getId() + " 1");
                         current = null;
-                        state = State.AFTER_QUESTION;
+                        setState(State.AFTER_QUESTION);
                     } else {
-                        sendMessage("Это неправильный ответ, " + getName(new net.egork.telegram.svoyak.data.User(message.getFrom())), PLUS, SUCCESSIVE_QUESTION);
+                        String verdict = "Это неправильный ответ, " + getName(
+                                new net.egork.telegram.svoyak.data.User(message.getFrom()));
+                        sendMessage(verdict, PLUS, SUCCESSIVE_QUESTION);
+                        publish(verdict, Priority.LOW);
                         editMessage(getQuestionText());
-                        answers.add(current.getId());
+                        roster.answered(roster.seatOf(current.getId()));
+                        gameChat.record("verdict " + current.getId() + " 0");
                         current = null;
-                        state = State.QUESTION;
+                        setState(State.QUESTION);
                     }
                     return;
                 }
@@ -456,18 +623,23 @@ public class Game implements Runnable {
                 if (command.equals("/abort")) {
                     endGame(true);
                 } else if (command.equals("+") && state == State.QUESTION) {
-                    if (answers.indexOf(user.getId()) != -1) {
+                    int seat = roster.seatOf(user.getId());
+                    if (seat == -1 || roster.hasAnswered(seat)) {
                         return;
                     }
-                    if (!users.containsKey(user.getId())) {
-                        return;
+                    roster.seat(user.getId(), getName(user));
+                    if (buzzer.press(user, message.getDate(), receivedAt)) {
+                        if (buzzer.getWindow() == 0) {
+                            decideBuzz();
+                        } else {
+                            int round = buzzer.getRound();
+                            clock.schedule(() -> executor.execute(() -> {
+                                if (buzzer.getRound() == round) {
+                                    decideBuzz();
+                                }
+                            }), buzzer.getWindow());
+                        }
                     }
-                    users.put(user.getId(), getName(user));
-                    current = user;
-                    sendMessage("Ваш ответ, " + getName(user) + "?", null, ANSWER);
-                    editMessage("<b>Тема</b> " + currentTopic.topicName + "\n<b>" + currentQuestion.cost + ".</b> " +
-                            "Вопрос скрыт");
-                    state = State.ANSWER;
                 } else if ((command.equals("/pause") || command.equals("пауза")) && state != State.QUESTION && state
                         != State.ANSWER && !paused) {
                     sendMessage("Игра приостановлена", state == State.AFTER_QUESTION ? PAUSED : null, 600000);
@@ -489,10 +661,18 @@ public class Game implements Runnable {
                     } else {
                         try {
                             int by = Integer.parseInt(tokens[1]);
-                            add(user.getId(), by);
-                            users.put(user.getId(), getName(user));
-                            sendMessage("Новое количество очков у " + getName(user) + " - " + score.get(user.getId()),
-                                    EMPTY);
+                            int seat = roster.seat(user.getId(), getName(user));
+                            if (seat == -1) {
+                                sendMessage("Все " + Roster.MAX_SEATS + " мест в игре заняты", EMPTY);
+                                return;
+                            }
+                            roster.add(seat, by);
+                            gameChat.record("score " + user.getId() + " " + by);
+                            updateScoreboard();
+                            String adjusted = "Новое количество очков у " + getName(user) + " - " +
+                                    roster.getScore(seat);
+                            sendMessage(adjusted, EMPTY);
+                            publish(adjusted, Priority.LOW);
                         } catch (NumberFormatException e) {
                             sendMessage(tokens[1] + " не число", EMPTY);
                         }
@@ -502,21 +682,27 @@ public class Game implements Runnable {
         });
     }
 
-    private void fixAnswer(Message message, String username) {
-        boolean found = false;
-        for (int user : answers) {
-            if (user == message.getFrom().getId()) {
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
+    private void decideBuzz() {
+        net.egork.telegram.svoyak.data.User user = buzzer.decide();
+        if (user == null || state != State.QUESTION) {
             return;
         }
-        if (correct == message.getFrom().getId()) {
+        current = user;
+        gameChat.record("buzz " + user.getId());
+        sendMessage("Ваш ответ, " + getName(user) + "?", null, ANSWER, Priority.HIGH);
+        publish("Отвечает " + getName(user), Priority.LOW);
+        editMessage(currentQuestion.compiled().getHidden());
+        setState(State.ANSWER);
+    }
+
+    private void fixAnswer(Message message, String username) {
+        int seat = roster.seatOf(message.getFrom().getId());
+        if (seat == -1 || !roster.hasAnswered(seat) || roster.getCorrect() == seat) {
             return;
         }
-        correct = message.getFrom().getId();
+        roster.setCorrect(seat);
+        gameChat.record("fix " + message.getFrom().getId());
+        publish("Ответ засчитан, " + username, Priority.LOW);
         if (paused) {
             sendMessage("Принято, " + username, PAUSED);
         } else {
@@ -525,8 +711,11 @@ public class Game implements Runnable {
     }
 
     private void discardAnswer(Message message, String username) {
-        if (correct != 0 && correct == message.getFrom().getId()) {
-            correct = 0;
+        int seat = roster.getCorrect();
+        if (seat != -1 && roster.getId(seat) == message.getFrom().getId()) {
+            roster.setCorrect(-1);
+            gameChat.record("discard");
+            publish("Ответ не засчитан, " + username, Priority.LOW);
             if (paused) {
                 sendMessage("Принято, " + username, PAUSED);
             } else {
@@ -541,20 +730,21 @@ public class Game implements Runnable {
     }
 
     public void addResults() {
-        for (int user : answers) {
-            if (correct == user) {
-                add(user, currentQuestion.cost);
-                break;
-            }
-            add(user, -currentQuestion.cost);
-        }
+        roster.countResults(currentQuestion.cost);
     }
 
-    private void add(int user, int cost) {
-        if (!score.containsKey(user)) {
-            score.put(user, 0);
+    /**
+     * Seat for a player found in saved state, players who only had their score adjusted may have none yet
+     */
+    private void seatPlayer(net.egork.telegram.svoyak.data.User player) {
+        if (roster.seat(player.getId(), getName(player)) == -1) {
+            logger.warn("No seat left for " + player.getId() + " in " + gameChat.chatId);
         }
-        score.put(user, score.get(user) + cost);
+    }
+
+    private int seat(int id) {
+        int seat = roster.seatOf(id);
+        return seat != -1 ? seat : roster.seat(id, String.valueOf(id));
     }
 
     private class CallBack implements Consumer<Integer> {
@@ -570,7 +760,7 @@ public class Game implements Runnable {
                 @Override
                 public void run() {
                     if (!paused || delay == 600000) {
-                        actionExpires = System.currentTimeMillis() + delay;
+                        expireAt(clock.millis() + delay);
                     }
                 }
             });
@@ -0,0 +1,40 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.Clock;
+import net.egork.telegram.TelegramBot;
+import net.egork.telegram.svoyak.data.TopicSet;
+
+/**
+ * What a {@link Game} needs from the rest of the system: the bot to talk through, time, and someone to report the
+ * outcome to.
+ *
+ * @author egor@egork.net
+ */
+public interface GameHost {
+    TelegramBot getGameBot();
+
+    /**
+     * Bot that mirrors games to spectator chats, it has to be a member of them
+     */
+    default TelegramBot getBroadcastBot() {
+        return getGameBot();
+    }
+
+    Clock getClock();
+
+    /**
+     * Called on the game's executor, the roster must not be kept past the call
+     */
+    void endGame(long origChatId, TopicSet set, Roster roster, boolean aborted);
+
+    /**
+     * Called once the game is over and its room should be emptied
+     */
+    void kickUsers(long chatId);
+
+    /**
+     * Called on the game's executor on every state change
+     */
+    default void stateChanged(Game game, Game.State from, Game.State to) {
+    }
+}
@@ -0,0 +1,24 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.Execution;
+import net.egork.telegram.SerialExecutor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Games are actors: each has a mailbox for incoming messages, wake-ups and send callbacks, and all the mailboxes are
+ * drained by one pool with a thread per core ({@code game.workers}).
+ *
+ * @author egor@egork.net
+ */
+public class GameRuntime {
+    private static final ExecutorService workers = Execution.newPool("Game worker", Integer.parseInt(
+            System.getProperty("game.workers", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+
+    private GameRuntime() {
+    }
+
+    public static SerialExecutor newMailbox() {
+        return new SerialExecutor(workers);
+    }
+}
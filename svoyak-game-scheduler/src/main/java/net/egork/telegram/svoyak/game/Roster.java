@@ -0,0 +1,170 @@
+package net.egork.telegram.svoyak.game;
+
+import java.util.Arrays;
+
+/**
+ * Players of a game, each with a seat index: scores are kept in an array by seat, who is present and who has answered
+ * the current question are bitmasks over seats. Games have a handful of players, so seats are found by a linear scan.
+ * Not thread safe, used from the game's executor.
+ *
+ * @author egor@egork.net
+ */
+public class Roster {
+    public static final int MAX_SEATS = 64;
+
+    private int[] ids = new int[4];
+    private String[] names = new String[4];
+    private int[] scores = new int[4];
+    private int size;
+    private long present;
+    private long answered;
+    private final int[] answerOrder = new int[MAX_SEATS];
+    private int answerCount;
+    private int correct = -1;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return seat of the player, -1 if the player has none
+     */
+    public int seatOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int id) {
+        return seatOf(id) != -1;
+    }
+
+    /**
+     * Seats the player if not seated yet and updates the name
+     *
+     * @return seat of the player, -1 if all the seats are taken
+     */
+    public int seat(int id, String name) {
+        int seat = seatOf(id);
+        if (seat == -1) {
+            if (size == MAX_SEATS) {
+                return -1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            seat = size++;
+            ids[seat] = id;
+        }
+        names[seat] = name;
+        return seat;
+    }
+
+    public int getId(int seat) {
+        return ids[seat];
+    }
+
+    public String getName(int seat) {
+        return names[seat];
+    }
+
+    public int getScore(int seat) {
+        return scores[seat];
+    }
+
+    public void add(int seat, int points) {
+        scores[seat] += points;
+    }
+
+    /**
+     * @return true once every seated player is present
+     */
+    public boolean markPresent(int seat) {
+        present |= 1L << seat;
+        return Long.bitCount(present) == size;
+    }
+
+    /**
+     * Forgets the answers to the previous question
+     */
+    public void newQuestion() {
+        answered = 0;
+        answerCount = 0;
+        correct = -1;
+    }
+
+    public void answered(int seat) {
+        if ((answered & 1L << seat) == 0) {
+            answered |= 1L << seat;
+            answerOrder[answerCount++] = seat;
+        }
+    }
+
+    public boolean hasAnswered(int seat) {
+        return (answered & 1L << seat) != 0;
+    }
+
+    public int getAnswerCount() {
+        return answerCount;
+    }
+
+    /**
+     * @return seat of the player whose answer was accepted, -1 if none was
+     */
+    public int getCorrect() {
+        return correct;
+    }
+
+    public void setCorrect(int seat) {
+        correct = seat;
+    }
+
+    /**
+     * Adds the question's points to whoever answered it right and takes them from everyone who answered wrong before
+     */
+    public void countResults(int cost) {
+        for (int i = 0; i < answerCount; i++) {
+            int seat = answerOrder[i];
+            if (seat == correct) {
+                scores[seat] += cost;
+                break;
+            }
+            scores[seat] -= cost;
+        }
+    }
+
+    /**
+     * @return seats ordered by score, highest first, ties in seating order
+     */
+    public int[] standings() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && scores[order[j - 1]] < scores[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Appends a line with name and score per player, highest score first
+     */
+    public StringBuilder appendScores(StringBuilder builder) {
+        for (int seat : standings()) {
+            builder.append(names[seat]).append(' ').append(scores[seat]).append('\n');
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,102 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.Clock;
+import net.egork.telegram.Priority;
+import net.egork.telegram.TelegramBot;
+import net.egork.telegram.TimerWheel;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Pinned message with the running score of a room's game, edited in place. Updates are paced: at most one edit per
+ * {@code scoreboard.interval} milliseconds goes out, carrying the latest score, and updates in between are folded into
+ * it. All methods are called on the game's executor.
+ *
+ * @author egor@egork.net
+ */
+public class Scoreboard {
+    private static final long INTERVAL = Long.parseLong(System.getProperty("scoreboard.interval", "5000"));
+    // Leaves the room's reply keyboard alone
+    private static final String[] KEEP_KEYBOARD = {};
+
+    private final TelegramBot bot;
+    private final long chatId;
+    private final Clock clock;
+    private final Executor executor;
+    private int messageId;
+    private boolean creating;
+    private boolean pinned;
+    private boolean closed;
+    private String shown;
+    private String latest;
+    private long lastEdit;
+    private TimerWheel.Timeout pending;
+
+    public Scoreboard(TelegramBot bot, long chatId, Clock clock, Executor executor) {
+        this.bot = bot;
+        this.chatId = chatId;
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    public void update(String text) {
+        if (closed) {
+            return;
+        }
+        latest = text;
+        if (messageId != 0) {
+            schedule();
+        } else if (!creating) {
+            creating = true;
+            shown = text;
+            // High priority messages are never merged with others, the scoreboard is edited in place later
+            bot.sendMessage(chatId, text, KEEP_KEYBOARD, Priority.HIGH).thenAcceptAsync(this::created, executor);
+        }
+    }
+
+    private void created(int id) {
+        creating = false;
+        if (id == 0 || closed) {
+            // Not sent, the next update tries again
+            return;
+        }
+        messageId = id;
+        lastEdit = clock.millis();
+        bot.pinMessage(chatId, id).thenAcceptAsync(ok -> pinned = ok, executor);
+        schedule();
+    }
+
+    private void schedule() {
+        if (pending != null || latest.equals(shown)) {
+            return;
+        }
+        long wait = lastEdit + INTERVAL - clock.millis();
+        if (wait > 0) {
+            pending = clock.schedule(() -> executor.execute(() -> {
+                pending = null;
+                if (!closed) {
+                    schedule();
+                }
+            }), wait);
+            return;
+        }
+        shown = latest;
+        lastEdit = clock.millis();
+        bot.editMessage(chatId, messageId, latest, Priority.LOW);
+    }
+
+    /**
+     * @return true once the scoreboard is pinned, until then players only see the score in regular messages
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    public void close() {
+        closed = true;
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+}
@@ -2,10 +2,16 @@ package net.egork.telegram.svoyak.scheduler;
 
 import net.egork.telegram.svoyak.data.TopicSet;
 import net.egork.telegram.svoyak.data.User;
+import net.egork.telegram.svoyak.game.Broadcast;
 import net.egork.telegram.svoyak.game.Game;
+import net.egork.telegram.svoyak.game.GameHost;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.egork.telegram.svoyak.data.Data.DATA;
 
@@ -16,12 +22,33 @@ public class GameChat {
     public final long chatId;
     public final String inviteLink;
     private boolean isFree = true;
-    private Game currentGame;
+    private volatile Game currentGame;
     private GameData gameData;
+    private final Set<Integer> left = ConcurrentHashMap.newKeySet();
+    private final boolean persistent;
+    private final GameJournal journal;
+    private final Broadcast broadcast;
 
     public GameChat(long chatId, String inviteLink) {
+        this(chatId, inviteLink, true);
+    }
+
+    /**
+     * @param persistent whether game state is saved to disk to survive restarts
+     */
+    public GameChat(long chatId, String inviteLink, boolean persistent) {
         this.chatId = chatId;
         this.inviteLink = inviteLink;
+        this.persistent = persistent;
+        journal = persistent ? new GameJournal(new File(Math.abs(chatId) + ".journal")) : null;
+        broadcast = new Broadcast(chatId, persistent ? new File(Math.abs(chatId) + ".watchers") : null);
+    }
+
+    /**
+     * Spectator chats following the games in this room, they stay subscribed from one game to the next
+     */
+    public Broadcast getBroadcast() {
+        return broadcast;
     }
 
     public boolean isFree() {
@@ -29,17 +56,33 @@ public class GameChat {
     }
 
     public void setFree(boolean free) {
-        if (free) {
+        if (free && currentGame != null) {
+            currentGame.close();
             currentGame = null;
         }
         isFree = free;
     }
 
-    public void startGame(SchedulerMain scheduler, long id, TopicSet topicSet, List<Integer> topics, GameData game) {
+    public void startGame(GameHost scheduler, long id, TopicSet topicSet, List<Integer> topics, GameData game) {
         gameData = game;
         currentGame = new Game(scheduler, id, this, topicSet, topics, game.getPlayers());
     }
 
+    public void memberJoined(int userId) {
+        left.remove(userId);
+    }
+
+    public void memberLeft(int userId) {
+        left.add(userId);
+    }
+
+    /**
+     * @return true if the user is known to be out of the chat, so there is no need to kick the user
+     */
+    public boolean hasLeft(int userId) {
+        return left.contains(userId);
+    }
+
     public Game getGame() {
         return currentGame;
     }
@@ -48,32 +91,56 @@ public class GameChat {
         return gameData;
     }
 
+    /**
+     * Starts the game's journal over with a snapshot of the current state
+     */
     public void saveState() {
+        if (!persistent) {
+            return;
+        }
         if (isFree) {
             System.err.println("No current game");
             return;
         }
-        try {
-            PrintWriter pw = new PrintWriter(getFileName());
-            gameData.saveState(pw);
-            currentGame.saveState(pw);
-            pw.close();
-        } catch (IOException e) {
-            System.err.println("Problem saving state for " + chatId);
+        StringWriter snapshot = new StringWriter();
+        PrintWriter pw = new PrintWriter(snapshot);
+        gameData.saveState(pw);
+        currentGame.saveState(pw);
+        pw.close();
+        journal.start(snapshot.toString());
+    }
+
+    /**
+     * Appends an event to the game's journal, replayed by {@link Game#resume} after a restart
+     */
+    public void record(String event) {
+        if (persistent) {
+            journal.append(event);
         }
     }
 
-    private boolean loadState(SchedulerMain schedulerMain) {
-        File file = new File(getFileName());
+    private boolean loadState(GameHost scheduler) {
+        boolean fromJournal = journal.getFile().exists();
+        File file = fromJournal ? journal.getFile() : new File(getFileName());
         if (!file.exists()) {
             return false;
         }
-        try {
+        try (BufferedReader reader = fromJournal ? new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8)) : new BufferedReader(new FileReader(file))) {
             isFree = false;
-            BufferedReader reader = new BufferedReader(new FileReader(file));
             gameData = GameData.loadState(reader);
-            currentGame = new Game(schedulerMain, this, DATA.getSet(gameData.getSetId()));
+            currentGame = new Game(scheduler, this, DATA.getSet(gameData.getSetId()));
             currentGame.loadState(reader, gameData.getPlayers());
+            List<String> events = new ArrayList<>();
+            String event;
+            while ((event = reader.readLine()) != null) {
+                events.add(event);
+            }
+            if (!fromJournal) {
+                // Events from now on are journaled, they need a snapshot to be replayed against
+                saveState();
+            }
+            currentGame.resume(events);
             return true;
         } catch (IOException | IllegalStateException | NumberFormatException e) {
             System.err.println("Error loading " + chatId);
@@ -129,12 +196,21 @@ public class GameChat {
         return Math.abs(chatId) + ".state";
     }
 
+    /**
+     * Drops the journal once the game is over, its results are in the ratings by then
+     */
     public void removeSavedState() {
+        if (!persistent) {
+            return;
+        }
+        journal.delete();
         File state = new File(getFileName());
         state.delete();
     }
 
-    public void loadLastGame(SchedulerMain schedulerMain) {
-        loadState(schedulerMain);
+    public void loadLastGame(GameHost scheduler) {
+        if (persistent) {
+            loadState(scheduler);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package net.egork.telegram.svoyak.scheduler;
 
+import net.egork.telegram.Execution;
 import net.egork.telegram.svoyak.Utils;
 import net.egork.telegram.svoyak.data.User;
 
@@ -21,10 +22,10 @@ public class GameData {
     private List<net.egork.telegram.svoyak.data.User> players = new ArrayList<>();
     private List<net.egork.telegram.svoyak.data.User> spectators = new ArrayList<>();
     private User judge = null;
-    private long lastUpdated = System.currentTimeMillis();
+    private long lastUpdated = Execution.getClock().millis();
 
     public GameData() {
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public String getSetId() {
@@ -33,7 +34,7 @@ public class GameData {
 
     public void setSetId(String setId) {
         this.setId = setId;
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public int getTopicCount() {
@@ -42,7 +43,7 @@ public class GameData {
 
     public void setTopicCount(int topicCount) {
         this.topicCount = topicCount;
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public int getMinPlayers() {
@@ -51,7 +52,7 @@ public class GameData {
 
     public void setMinPlayers(int minPlayers) {
         this.minPlayers = minPlayers;
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public int getMaxPlayers() {
@@ -60,7 +61,7 @@ public class GameData {
 
     public void setMaxPlayers(int maxPlayers) {
         this.maxPlayers = maxPlayers;
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public List<net.egork.telegram.svoyak.data.User> getPlayers() {
@@ -70,13 +71,13 @@ public class GameData {
     public void addPlayer(net.egork.telegram.svoyak.data.User user) {
         unregister(user);
         players.add(user);
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public void addSpectator(net.egork.telegram.svoyak.data.User user) {
         unregister(user);
         spectators.add(user);
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public List<net.egork.telegram.svoyak.data.User> getSpectators() {
@@ -86,7 +87,7 @@ public class GameData {
     public void unregister(net.egork.telegram.svoyak.data.User user) {
         spectators.remove(user);
         players.remove(user);
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = Execution.getClock().millis();
     }
 
     public User getJudge() {
@@ -0,0 +1,104 @@
+package net.egork.telegram.svoyak.scheduler;
+
+import net.egork.telegram.Execution;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only journal of a room's game: a snapshot written when the game starts, followed by one line per event. The
+ * game starts it over with a fresh snapshot at every topic, so it never grows beyond one topic of events. All file
+ * work happens on a background thread shared by all rooms, so the game never waits for the disk. Writes are buffered
+ * and flushed whenever the backlog drains.
+ *
+ * @author egor@egork.net
+ */
+public class GameJournal {
+    private static final Logger logger = LogManager.getLogger(GameJournal.class);
+    private static final ExecutorService io = Execution.newSerialExecutor("Journal");
+
+    private final File file;
+    private final AtomicInteger pending = new AtomicInteger();
+    private Writer writer;
+    // Only touched on the journal thread, events queued behind a delete must not bring the file back
+    private boolean deleted;
+
+    public GameJournal(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts the journal over with the given snapshot, dropping the previous contents
+     */
+    public void start(String snapshot) {
+        submit(() -> {
+            close();
+            deleted = false;
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            writer.write(snapshot);
+        });
+    }
+
+    public void append(String event) {
+        submit(() -> {
+            if (deleted) {
+                return;
+            }
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                        StandardCharsets.UTF_8));
+            }
+            writer.write(event);
+            writer.write('\n');
+        });
+    }
+
+    public void delete() {
+        submit(() -> {
+            close();
+            deleted = true;
+            if (file.exists() && !file.delete()) {
+                logger.error("Unable to delete " + file);
+            }
+        });
+    }
+
+    private void submit(IOTask task) {
+        pending.incrementAndGet();
+        io.execute(() -> {
+            try {
+                task.run();
+                if (pending.decrementAndGet() == 0 && writer != null) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                pending.decrementAndGet();
+                logger.error("Problem writing " + file, e);
+            }
+        });
+    }
+
+    private void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private interface IOTask {
+        void run() throws IOException;
+    }
+}
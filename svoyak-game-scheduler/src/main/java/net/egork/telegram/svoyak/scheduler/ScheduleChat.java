@@ -1,14 +1,13 @@
 package net.egork.telegram.svoyak.scheduler;
 
+import net.egork.telegram.Execution;
+import net.egork.telegram.Priority;
 import net.egork.telegram.svoyak.Utils;
 import net.egork.telegram.svoyak.data.User;
 import org.telegram.telegrambots.api.objects.Message;
 
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import static net.egork.telegram.svoyak.data.Data.DATA;
 
@@ -18,29 +17,25 @@ import static net.egork.telegram.svoyak.data.Data.DATA;
 public class ScheduleChat {
     private final long id;
     private final SchedulerMain scheduler;
-    private Executor executor = Executors.newSingleThreadExecutor();
+    private Executor executor;
     private GameData currentGame;
 
     public ScheduleChat(long id, SchedulerMain scheduler) {
         this.id = id;
         this.scheduler = scheduler;
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                executor.execute(() -> onTimer());
-            }
-        }, 0L, 3000L);
+        executor = Execution.newSerialExecutor("Lobby " + id);
+        Execution.getClock().schedule(() -> executor.execute(() -> onTimer()), 0L, 3000L);
     }
 
     private void onTimer() {
-        if (currentGame != null && System.currentTimeMillis() - currentGame.getLastUpdated() > 5 * 60 * 1000) {
+        if (currentGame != null && Execution.getClock().millis() - currentGame.getLastUpdated() > 5 * 60 * 1000) {
             currentGame = null;
             sendMessage("Игра отменена из-за отсутствия активности");
         }
     }
 
     private void sendMessage(String message) {
-        scheduler.getBot().sendMessage(id, message);
+        scheduler.getBot().sendMessage(id, message, Priority.LOW);
     }
 
     private void createGame() {
@@ -84,6 +79,8 @@ public class ScheduleChat {
                         "/abort - отменяет текущую игру\n" +
                         "/status или статус - выводит список идущих игр\n" +
                         "/rating или рейтинг - выводит таблицу ретинга\n" +
+                        "/watch или смотреть с номером комнаты - транслирует игры из этой комнаты в чат\n" +
+                        "/unwatch или несмотреть - отключает трансляцию в этот чат, с номером комнаты - только из этой комнаты\n" +
                         "/block - блокирует пакет. Пожалуйста, используйте только если вы ранее играли этот пакет. Отменить действие будет невозможно.\n" +
                         "\n" +
                         "Во время игры:\n" +
@@ -221,7 +218,7 @@ public class ScheduleChat {
                 List<String> active = DATA.getActive();
                 StringBuilder list = new StringBuilder();
                 for (String id : active) {
-                    list.append(id).append(" - ").append(DATA.getSet(id).shortName).append("\n");
+                    list.append(id).append(" - ").append(DATA.getSet(id).escapedName).append("\n");
                 }
                 sendMessage("Список пакетов:\n" + list);
                 break;
@@ -230,6 +227,37 @@ public class ScheduleChat {
                 String games = scheduler.getGameStatus();
                 sendMessage((currentGame != null ? "Открыта регистрация\n" : "Регистрация не открыта\n") + games);
                 break;
+            case "/watch":
+            case "смотреть":
+                if (argument == null || !Utils.isNumber(argument, 1, scheduler.getRoomCount())) {
+                    sendMessage("Укажите номер комнаты от 1 до " + scheduler.getRoomCount());
+                } else {
+                    Long target = watchTarget(message, tokens);
+                    if (target != null) {
+                        scheduler.getRoom(Integer.parseInt(argument)).getBroadcast().subscribe(target);
+                        sendMessage("Игры из комнаты " + argument + " будут транслироваться в " +
+                                (target == id ? "этот чат" : "чат " + target));
+                    }
+                }
+                break;
+            case "/unwatch":
+            case "несмотреть":
+                if (argument == null) {
+                    for (int i = 1; i <= scheduler.getRoomCount(); i++) {
+                        scheduler.getRoom(i).getBroadcast().unsubscribe(id);
+                    }
+                    sendMessage("Трансляция отключена");
+                } else if (!Utils.isNumber(argument, 1, scheduler.getRoomCount())) {
+                    sendMessage("Укажите номер комнаты от 1 до " + scheduler.getRoomCount());
+                } else {
+                    Long target = watchTarget(message, tokens);
+                    if (target != null) {
+                        scheduler.getRoom(Integer.parseInt(argument)).getBroadcast().unsubscribe(target);
+                        sendMessage("Трансляция из комнаты " + argument + " в " +
+                                (target == id ? "этот чат" : "чат " + target) + " отключена");
+                    }
+                }
+                break;
             case "/rating":
             case "рейтинг":
                 int top;
@@ -252,6 +280,28 @@ public class ScheduleChat {
         }
     }
 
+    /**
+     * A channel can't send commands, so the admin subscribes it from a chat by its id. Anyone else can only subscribe
+     * the chat the command comes from.
+     *
+     * @return chat the /watch or /unwatch command is about, null if the command was refused
+     */
+    private Long watchTarget(Message message, String[] tokens) {
+        if (tokens.length < 3) {
+            return id;
+        }
+        if (!scheduler.isAuthorized(message.getFrom())) {
+            sendMessage("Транслировать в другие чаты может только администратор");
+            return null;
+        }
+        try {
+            return Long.parseLong(tokens[2]);
+        } catch (NumberFormatException e) {
+            sendMessage(tokens[2] + " не номер чата");
+            return null;
+        }
+    }
+
     public void shuttingDown() {
         sendMessage("Бот в ближайшее время будет перезагружен. Создание новых игр временно отключено.");
     }
@@ -1,18 +1,27 @@
 package net.egork.telegram.svoyak.scheduler;
 
+import net.egork.telegram.BotTransport;
+import net.egork.telegram.Clock;
+import net.egork.telegram.DeadLetter;
+import net.egork.telegram.Execution;
+import net.egork.telegram.FakeTransport;
 import net.egork.telegram.TelegramBot;
+import net.egork.telegram.TelegramTransport;
+import net.egork.telegram.WebhookServer;
+import net.egork.telegram.WebhookTransport;
 import net.egork.telegram.svoyak.Utils;
 import net.egork.telegram.svoyak.data.Data;
 import net.egork.telegram.svoyak.data.Topic;
 import net.egork.telegram.svoyak.data.TopicSet;
 import net.egork.telegram.svoyak.game.Game;
+import net.egork.telegram.svoyak.game.GameHost;
+import net.egork.telegram.svoyak.game.Roster;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.jetbrains.annotations.NotNull;
 import org.telegram.telegrambots.ApiContextInitializer;
 import org.telegram.telegrambots.TelegramBotsApi;
 import org.telegram.telegrambots.api.objects.*;
-import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -20,17 +29,18 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import static net.egork.telegram.svoyak.data.Data.DATA;
 
 /**
  * @author egor@egork.net
  */
-public class SchedulerMain {
-    private static TelegramBotsApi botsApi;
+public class SchedulerMain implements GameHost {
     private static Log log = LogFactory.getLog(SchedulerMain.class);
+    private static final long KICK_RETRY = 60000;
 
+    private final BotTransport schedulerTransport;
+    private final BotTransport playTransport;
     private TelegramBot bot;
     private TelegramBot gameBot;
     private GameChat[] gameChats = {
@@ -60,69 +70,127 @@ public class SchedulerMain {
             new GameChat(-414430406L, "https://t.me/joinchat/GJNnBxiztMYfkcNn6EQhkQ"), //24
             new GameChat(-442005867L, "https://t.me/joinchat/GJNnBxpYeWs6GkFeem2Otg"), //25
     };
+    private final Map<Long, GameChat> rooms = new HashMap<>();
     private boolean shuttingDown = false;
 
-    private Executor executor = Executors.newSingleThreadExecutor();
+    private Executor executor = Execution.newSerialExecutor("Scheduler");
     private Map<Long, ScheduleChat> chats = new HashMap<>();
 
-    public static void main(String[] args) {
-        ApiContextInitializer.init();
-        botsApi = new TelegramBotsApi();
-        new SchedulerMain().run();
+    public SchedulerMain(BotTransport schedulerTransport, BotTransport playTransport) {
+        this.schedulerTransport = schedulerTransport;
+        this.playTransport = playTransport;
+        gameChats = loadRooms(gameChats);
+        for (GameChat gameChat : gameChats) {
+            rooms.put(gameChat.chatId, gameChat);
+        }
+    }
+
+    /**
+     * Adds rooms listed in rooms.list, one "chat id, invite link" pair per line, to the built-in ones
+     */
+    private static GameChat[] loadRooms(GameChat[] builtIn) {
+        List<GameChat> result = new ArrayList<>(Arrays.asList(builtIn));
+        java.io.File file = new java.io.File("rooms.list");
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new java.io.FileReader(file))) {
+                String s;
+                while ((s = reader.readLine()) != null) {
+                    String[] tokens = s.trim().split("\\s+");
+                    if (tokens.length == 2) {
+                        result.add(new GameChat(Long.parseLong(tokens[0]), tokens[1]));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.error("Unable to load rooms.list", e);
+            }
+        }
+        return result.toArray(new GameChat[result.size()]);
     }
 
-    private void run() {
+    public static void main(String[] args) {
         loadProperties();
-        gameBot = new TelegramBot(System.getProperty("play.token"), "SvoyakPlayBot") {
+        BotTransport schedulerTransport;
+        BotTransport playTransport;
+        if ("fake".equals(System.getProperty("bot.transport"))) {
+            schedulerTransport = new FakeTransport(1);
+            playTransport = new FakeTransport(2);
+        } else if ("webhook".equals(System.getProperty("bot.mode"))) {
+            WebhookServer server;
+            try {
+                server = new WebhookServer(Integer.parseInt(System.getProperty("webhook.port", "8443")));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            String url = System.getProperty("webhook.url");
+            schedulerTransport = new WebhookTransport(server, url, System.getProperty("scheduler.token"),
+                    "SvoyakSchedulerBot", TelegramBot.getMaxInFlight());
+            playTransport = new WebhookTransport(server, url, System.getProperty("play.token"), "SvoyakPlayBot",
+                    TelegramBot.getMaxInFlight());
+        } else {
+            ApiContextInitializer.init();
+            TelegramBotsApi botsApi = new TelegramBotsApi();
+            schedulerTransport = new TelegramTransport(botsApi, System.getProperty("scheduler.token"),
+                    "SvoyakSchedulerBot", TelegramBot.getMaxInFlight());
+            playTransport = new TelegramTransport(botsApi, System.getProperty("play.token"), "SvoyakPlayBot",
+                    TelegramBot.getMaxInFlight());
+        }
+        new SchedulerMain(schedulerTransport, playTransport).run();
+        if (Execution.isVirtual()) {
+            // Virtual threads don't keep the JVM alive
+            try {
+                Thread.currentThread().join();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    public void run() {
+        gameBot = new TelegramBot(playTransport, "SvoyakPlayBot") {
             @Override
-            protected void processMessage(Message message) {
-                executor.execute(() -> processPlayMessage(message));
+            protected void processMessage(Message message, long receivedAt) {
+                // Rooms are fixed and games have executors of their own, no need to go through the scheduler's one
+                processPlayMessage(message, receivedAt);
             }
         };
+        gameBot.setCoalescing(Boolean.parseBoolean(System.getProperty("play.coalesce", "true")));
         executor.execute(() -> {
             for (GameChat gameChat : gameChats) {
                 gameChat.loadLastGame(this);
             }
             System.err.println("Chats reloaded");
         });
-        bot = new TelegramBot(System.getProperty("scheduler.token"), "SvoyakSchedulerBot") {
+        bot = new TelegramBot(schedulerTransport, "SvoyakSchedulerBot") {
             @Override
-            protected void processMessage(Message message) {
+            protected void processMessage(Message message, long receivedAt) {
                 executor.execute(() -> SchedulerMain.this.processMessage(message));
             }
         };
         try {
-            botsApi.registerBot(bot);
-            botsApi.registerBot(gameBot);
-        } catch (TelegramApiRequestException e) {
+            bot.start();
+            gameBot.start();
+        } catch (TelegramApiException e) {
             throw new RuntimeException(e);
         }
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                executor.execute(() -> {
-                    if (System.currentTimeMillis() >= Data.DATA.getNextReset()) {
-                        Data.DATA.ratingDiscount();
-                        for (ScheduleChat chat : chats.values()) {
-                            chat.ratingUpdate();
-                        }
-                        Data.DATA.updateNextReset();
-                    }
-                });
+        getClock().schedule(() -> executor.execute(() -> {
+            if (getClock().millis() >= Data.DATA.getNextReset()) {
+                Data.DATA.ratingDiscount();
+                for (ScheduleChat chat : chats.values()) {
+                    chat.ratingUpdate();
+                }
+                Data.DATA.updateNextReset();
             }
-        }, 0, 60000);
+        }), 0, 60000);
     }
 
-    private void processPlayMessage(Message message) {
+    private void processPlayMessage(Message message, long receivedAt) {
         if (message != null) {
-            for (GameChat chat : gameChats) {
-                if (chat.chatId == message.getChat().getId()) {
-                    Game game = chat.getGame();
-                    if (game != null) {
-                        game.process(message);
-                    }
-                    return;
+            GameChat chat = rooms.get(message.getChat().getId());
+            if (chat != null) {
+                Game game = chat.getGame();
+                if (game != null) {
+                    game.process(message, receivedAt);
                 }
+                return;
             }
             gameBot.sendMessage(message.getChat().getId(), "Для игры пройдите в официальный канал - https://telegram.me/joinchat/BNC7RD7LLZ1gSQlsQh1NPw");
             System.err.println(message.getChat().getId());
@@ -131,7 +199,7 @@ public class SchedulerMain {
         }
     }
 
-    private void loadProperties() {
+    private static void loadProperties() {
         Properties properties = new Properties();
         try {
             properties.load(Thread.currentThread().getContextClassLoader().
@@ -162,8 +230,12 @@ public class SchedulerMain {
         for (GameChat chat : gameChats) {
             if (chat.chatId == chatId) {
                 if (message.getNewChatMember() != null) {
+                    chat.memberJoined(message.getNewChatMember().getId());
                     kickIfNeeded(chat, message.getNewChatMember());
                 }
+                if (message.getLeftChatMember() != null) {
+                    chat.memberLeft(message.getLeftChatMember().getId());
+                }
                 User from = message.getFrom();
                 if (from != null) {
                     if (from.getUserName() != null && (from.getUserName().equals("SvoyakPlayBot") || from.getUserName().equals("SvoyakSchedulerBot"))) {
@@ -220,7 +292,7 @@ public class SchedulerMain {
                     TopicSet set = newSet;
                     String id = document.getFileName();
                     DATA.addNewSet(id, set);
-                    bot.sendMessage(chatId, "Пакет " + set.shortName + " загружен. Всего " + set.topics.size() +
+                    bot.sendMessage(chatId, "Пакет " + set.escapedName + " загружен. Всего " + set.topics.size() +
                             " " + Topic.getTopicWord(set.topics.size()));
                 }
             } catch (IOException e) {
@@ -258,6 +330,26 @@ public class SchedulerMain {
                         bot.sendMessage(chatId, "Пакет выключен - " + set);
                     }
                     break;
+                case "/fuzzy":
+                case "опечатки":
+                    if (set == null || DATA.getSet(set) == null) {
+                        bot.sendMessage(chatId, "Неизвестный пакет - " + set);
+                    } else {
+                        DATA.setFuzzy(set, !DATA.getSet(set).fuzzy);
+                        bot.sendMessage(chatId, (DATA.getSet(set).fuzzy ? "Ответы с опечатками принимаются - " :
+                                "Ответы с опечатками не принимаются - ") + set);
+                    }
+                    break;
+                case "/stemming":
+                case "словоформы":
+                    if (set == null || DATA.getSet(set) == null) {
+                        bot.sendMessage(chatId, "Неизвестный пакет - " + set);
+                    } else {
+                        DATA.setStemming(set, !DATA.getSet(set).stemming);
+                        bot.sendMessage(chatId, (DATA.getSet(set).stemming ? "Ответы в других формах принимаются - " :
+                                "Ответы в других формах не принимаются - ") + set);
+                    }
+                    break;
                 case "/alltopics":
                 case "темы":
                     if (set == null || DATA.getSet(set) == null) {
@@ -267,11 +359,31 @@ public class SchedulerMain {
                         StringBuilder list = new StringBuilder();
                         list.append("Список тем:\n");
                         for (int i = 0; i < topicSet.topics.size(); i++) {
-                            list.append((i + 1)).append(". ").append(topicSet.byIndex(i).topicName).append("\n");
+                            list.append((i + 1)).append(". ").append(topicSet.byIndex(i).escapedName)
+                                    .append("\n");
                         }
                         bot.sendMessage(chatId, list.toString());
                     }
                     break;
+                case "/deadletters":
+                    StringBuilder letters = new StringBuilder();
+                    for (TelegramBot telegramBot : new TelegramBot[]{bot, gameBot}) {
+                        List<DeadLetter> deadLetters = telegramBot.getDeadLetters();
+                        letters.append(telegramBot.getName()).append(" - ").append(deadLetters.size()).append("\n");
+                        for (DeadLetter letter : deadLetters) {
+                            letters.append(Utils.escape(letter.toString())).append("\n");
+                        }
+                    }
+                    bot.sendMessage(chatId, letters.toString());
+                    break;
+                case "/lanes":
+                    bot.sendMessage(chatId, bot.getName() + "\n" + bot.getDispatcher() + gameBot.getName() + "\n" +
+                            gameBot.getDispatcher());
+                    break;
+                case "/replay":
+                    int replayed = bot.replayDeadLetters() + gameBot.replayDeadLetters();
+                    bot.sendMessage(chatId, "Повторно отправлено: " + replayed);
+                    break;
                 case "/shutdown":
                 case "выключение":
                     shuttingDown = true;
@@ -286,7 +398,7 @@ public class SchedulerMain {
         }
     }
 
-    private boolean isAuthorized(User from) {
+    public boolean isAuthorized(User from) {
         return "Kroge".equals(from.getUserName());
     }
 
@@ -352,76 +464,82 @@ public class SchedulerMain {
         bot.sendMessage(id, "В текущем пакете недостаточно тем, которые бы не играли все игроки");
     }
 
+    @Override
+    public Clock getClock() {
+        return Execution.getClock();
+    }
+
+    @Override
     public TelegramBot getGameBot() {
         return gameBot;
     }
 
-    public void endGame(long origChatId, TopicSet set, Map<Integer, Integer> score, Map<Integer, String> players, boolean aborted) {
+    /**
+     * Spectators follow games from the lobbies, where the scheduler bot already is
+     */
+    @Override
+    public TelegramBot getBroadcastBot() {
+        return bot;
+    }
+
+    @Override
+    public void endGame(long origChatId, TopicSet set, Roster roster, boolean aborted) {
         if (aborted) {
-            bot.sendMessage(origChatId, "<b>Игра завершена.</b>\nПакет: " + set.shortName + "\n" + "Игра отменена.");
+            bot.sendMessage(origChatId, "<b>Игра завершена.</b>\nПакет: " + set.escapedName + "\n" + "Игра отменена.");
             return;
         }
-        Map<Integer, Integer> currentRatings = new HashMap<>();
-        for (Integer id : players.keySet()) {
-            currentRatings.put(id, DATA.getRating(id));
-        }
-        DATA.updateRatings(score, players);
-        Map<Integer, Integer> updatedRatings = new HashMap<>();
-        for (Integer id : players.keySet()) {
-            updatedRatings.put(id, DATA.getRating(id));
+        int[] currentRatings = new int[roster.size()];
+        for (int i = 0; i < roster.size(); i++) {
+            currentRatings[i] = DATA.getRating(roster.getId(i));
         }
-        List<GameResultEntry> entries = new ArrayList<>();
-        for (Map.Entry<Integer, String> entry : players.entrySet()) {
-            Integer key = entry.getKey();
-            entries.add(new GameResultEntry(entry.getValue(), score.get(key), updatedRatings.get(key),
-                    updatedRatings.get(key) - currentRatings.get(key)));
-        }
-        Collections.sort(entries);
+        DATA.updateRatings(roster);
         StringBuilder builder = new StringBuilder();
-        for (GameResultEntry entry : entries) {
-            builder.append(entry.name + " " + entry.points + " " + entry.rating + " (" + entry.delta + ")\n");
+        for (int seat : roster.standings()) {
+            int rating = DATA.getRating(roster.getId(seat));
+            builder.append(roster.getName(seat)).append(' ').append(roster.getScore(seat)).append(' ').append(rating)
+                    .append(" (").append(rating - currentRatings[seat]).append(")\n");
         }
-        bot.sendMessage(origChatId, "<b>Игра завершена.</b>\nПакет: " + set.shortName + "\n" + builder.toString());
+        bot.sendMessage(origChatId, "<b>Игра завершена.</b>\nПакет: " + set.escapedName + "\n" + builder.toString());
     }
 
+    @Override
     public void kickUsers(long chatId) {
         for (GameChat gameChat : gameChats) {
             if (gameChat.chatId == chatId) {
-                gameChat.setFree(true);
+                Set<Integer> users = new LinkedHashSet<>();
                 for (net.egork.telegram.svoyak.data.User user : gameChat.getGameData().getPlayers()) {
-                    kickPlayer(chatId, user.getId());
+                    users.add(user.getId());
                 }
                 for (net.egork.telegram.svoyak.data.User user : gameChat.getGameData().getSpectators()) {
-                    kickPlayer(chatId, user.getId());
+                    users.add(user.getId());
                 }
+                users.removeIf(gameChat::hasLeft);
+                // The room is offered for new games only once it is actually empty
+                bot.kickAll(chatId, users).thenAcceptAsync(remaining -> {
+                    for (int userId : users) {
+                        if (!remaining.contains(userId)) {
+                            gameChat.memberLeft(userId);
+                        }
+                    }
+                    if (remaining.isEmpty()) {
+                        gameChat.setFree(true);
+                        log.info("Room " + chatId + " is empty");
+                    } else {
+                        log.warn("Room " + chatId + " still has " + remaining + ", trying again in a minute");
+                        Execution.getClock().schedule(() -> executor.execute(() -> kickUsers(chatId)), KICK_RETRY);
+                    }
+                }, executor);
             }
         }
     }
 
-    private static class GameResultEntry implements Comparable<GameResultEntry> {
-        public final String name;
-        public final int points;
-        public final int rating;
-        public final int delta;
-
-        public GameResultEntry(String name, int points, int rating, int delta) {
-            this.name = name;
-            this.points = points;
-            this.rating = rating;
-            this.delta = delta;
-        }
-
-        @Override
-        public int compareTo(@NotNull GameResultEntry o) {
-            return o.points - points;
-        }
-    }
-
     public String getGameStatus() {
         StringBuilder builder = new StringBuilder();
-        for (GameChat chat : gameChats) {
+        for (int i = 0; i < gameChats.length; i++) {
+            GameChat chat = gameChats[i];
             if (!chat.isFree()) {
-                builder.append("\nИгра по пакету ").append(DATA.getSet(chat.getGameData().getSetId()).shortName);
+                builder.append("\nКомната ").append(i + 1).append(". Игра по пакету ").append(DATA.getSet(chat
+                        .getGameData().getSetId()).escapedName);
                 builder.append("\nИгроки: ").append(Utils.userList(chat.getGameData().getPlayers()));
                 builder.append(chat.getGame().getStatus() == Game.State.AFTER_GAME ? "\nИгра окончена\n" :
                         ("\nТема " + Math.min(chat.getGame().getCurrentTopic() + 1, chat.getGameData().
@@ -431,6 +549,17 @@ public class SchedulerMain {
         return builder.toString();
     }
 
+    public int getRoomCount() {
+        return gameChats.length;
+    }
+
+    /**
+     * @param room number as shown by /status, starting from 1
+     */
+    public GameChat getRoom(int room) {
+        return gameChats[room - 1];
+    }
+
     public boolean isShuttingDown() {
         return shuttingDown;
     }
@@ -0,0 +1,169 @@
+package net.egork.telegram.svoyak.simulation;
+
+import net.egork.telegram.svoyak.data.Question;
+import net.egork.telegram.svoyak.data.RussianStemmer;
+import net.egork.telegram.svoyak.data.Topic;
+import net.egork.telegram.svoyak.data.TopicSet;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times answer checking on the questions of the given packages (.si files, a generated package if none) against the
+ * string-building implementation it replaced, and makes sure both give the same verdicts. Attempts per question are
+ * the accepted answer as written, in other case with extra punctuation, without the bracketed part, with an extra
+ * letter, and in the genitive and instrumental case. Matching with typos allowed is timed too, and so is the added cost
+ * of stemming players' answers.
+ *
+ * @author egor@egork.net
+ */
+public class AnswerBenchmark {
+    private static final int ROUNDS = 10;
+    private static final String[] WORDS = {"Пушкин", "Менделеев", "Байкал", "Эрмитаж", "Ломоносов", "Волга"};
+
+    public static void main(String[] args) throws Exception {
+        List<Question> questions = new ArrayList<>();
+        for (String file : args) {
+            TopicSet set = TopicSet.parseReader(new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    StandardCharsets.UTF_8)));
+            if (set == null) {
+                System.err.println("Unable to parse " + file);
+                continue;
+            }
+            for (Topic topic : set.topics) {
+                questions.addAll(topic.questions);
+            }
+        }
+        if (questions.isEmpty()) {
+            questions = generate();
+        }
+        List<Question> checked = new ArrayList<>();
+        List<String> attempts = new ArrayList<>();
+        for (Question question : questions) {
+            for (String answer : question.getAnswers()) {
+                String bare = answer.replaceAll("\\(.*?\\)", "").trim();
+                for (String attempt : new String[]{answer, answer.toUpperCase() + "!", " " + bare + " ", answer + "ъ",
+                        bare + "а", bare + "ым"}) {
+                    checked.add(question);
+                    attempts.add(attempt);
+                }
+            }
+        }
+        int mismatches = 0;
+        for (int i = 0; i < attempts.size(); i++) {
+            if (checked.get(i).checkAnswer(attempts.get(i)) != legacyCheck(checked.get(i).getAnswers(),
+                    attempts.get(i))) {
+                mismatches++;
+                System.out.println("Verdicts differ for '" + attempts.get(i) + "' against " + checked.get(i)
+                        .getAnswers());
+            }
+        }
+        System.out.println(questions.size() + " questions, " + attempts.size() + " attempts, " + mismatches +
+                " mismatches");
+        RussianStemmer stemmer = new RussianStemmer();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int accepted = 0;
+            for (int i = 0; i < attempts.size(); i++) {
+                if (legacyCheck(checked.get(i).getAnswers(), attempts.get(i))) {
+                    accepted++;
+                }
+            }
+            long legacy = System.nanoTime() - start;
+            start = System.nanoTime();
+            int exact = 0;
+            for (int i = 0; i < attempts.size(); i++) {
+                if (checked.get(i).checkAnswer(attempts.get(i))) {
+                    exact++;
+                }
+            }
+            long matcher = System.nanoTime() - start;
+            start = System.nanoTime();
+            int typos = 0;
+            for (int i = 0; i < attempts.size(); i++) {
+                if (checked.get(i).checkAnswer(attempts.get(i), true, true)) {
+                    typos++;
+                }
+            }
+            long fuzzy = System.nanoTime() - start;
+            start = System.nanoTime();
+            int plain = 0;
+            for (int i = 0; i < attempts.size(); i++) {
+                if (checked.get(i).checkAnswer(attempts.get(i), true, false)) {
+                    plain++;
+                }
+            }
+            long withoutStems = System.nanoTime() - start;
+            start = System.nanoTime();
+            int length = 0;
+            for (String attempt : attempts) {
+                length += stemmer.normalize(attempt).length();
+            }
+            long stemming = System.nanoTime() - start;
+            if (round == ROUNDS - 1 || accepted != exact) {
+                System.out.printf("Legacy %.0fns per answer, matcher %.0fns, with typos %.0fns (%d more accepted)%n",
+                        (double) legacy / attempts.size(), (double) matcher / attempts.size(),
+                        (double) fuzzy / attempts.size(), typos - exact);
+                System.out.printf("Stemming adds %.0fns per answer (%d more accepted), the stemmer alone %.0fns (%d " +
+                        "letters)%n", (double) (fuzzy - withoutStems) / attempts.size(), typos - plain,
+                        (double) stemming / attempts.size(), length);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static List<Question> generate() {
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            questions.add(new Question(10, "Вопрос " + i, Arrays.asList("Ёлка номер " + i + " (зеленая)",
+                    "Ель-" + i, WORDS[i % WORDS.length])));
+        }
+        // Questions are compiled by their topic
+        new Topic("Тема", questions);
+        return questions;
+    }
+
+    // The implementation before the answers were normalized in advance
+    private static boolean legacyCheck(List<String> answers, String answer) {
+        answer = answer.trim().toLowerCase();
+        for (String expected : answers) {
+            if (noSpace(expected, false).toLowerCase().equals(noSpace(answer, true))) {
+                return true;
+            }
+            if (noSpace(expected, true).toLowerCase().equals(noSpace(answer, true))) {
+                return true;
+            }
+            if (noSpace(expected, false).toLowerCase().equals(noSpace(answer, false))) {
+                return true;
+            }
+            if (noSpace(expected, true).toLowerCase().equals(noSpace(answer, false))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String noSpace(String answer, boolean skipParenthesis) {
+        StringBuilder builder = new StringBuilder();
+        int parentheses = 0;
+        for (int i = 0; i < answer.length(); i++) {
+            char c = answer.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                parentheses++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                parentheses--;
+            } else if ((parentheses == 0 || !skipParenthesis) && Character.isLetterOrDigit(c)) {
+                if (c == 'ё' || c == 'Ё') {
+                    c = 'е';
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package net.egork.telegram.svoyak.simulation;
+
+import net.egork.telegram.Clock;
+import net.egork.telegram.FakeTransport;
+import net.egork.telegram.svoyak.data.Question;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simulated player: presses the buzzer on some of the questions after a human-like reaction time and answers right
+ * with the given probability. Talks to the game only through the transport, like a real player would.
+ *
+ * @author egor@egork.net
+ */
+public class BotPlayer {
+    private static final long MIN_REACTION = 300;
+    private static final long MAX_REACTION = 4000;
+    private static final long MIN_THINK = 1000;
+    private static final long MAX_THINK = 8000;
+
+    private final FakeTransport transport;
+    private final Clock clock;
+    private final long chatId;
+    private final int id;
+    private final String name;
+    private final double buzzChance;
+    private final double accuracy;
+    private final Random random;
+
+    /**
+     * @param random only used on the game's executor, seed it to replay the same game
+     */
+    public BotPlayer(FakeTransport transport, Clock clock, long chatId, int id, String name, double buzzChance,
+            double accuracy, Random random) {
+        this.transport = transport;
+        this.clock = clock;
+        this.chatId = chatId;
+        this.id = id;
+        this.name = name;
+        this.buzzChance = buzzChance;
+        this.accuracy = accuracy;
+        this.random = random;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void join() {
+        transport.feedNewMember(chatId, id, name);
+    }
+
+    /**
+     * Question is shown or reopened after a wrong answer
+     */
+    public void questionOpen() {
+        if (random.nextDouble() < buzzChance) {
+            say("+", between(MIN_REACTION, MAX_REACTION));
+        }
+    }
+
+    /**
+     * This player won the buzzer
+     */
+    public void answer(Question question) {
+        List<String> answers = question.getAnswers();
+        String text = !answers.isEmpty() && random.nextDouble() < accuracy ? answers.get(0) : "не знаю";
+        say(text, between(MIN_THINK, MAX_THINK));
+    }
+
+    private long between(long from, long to) {
+        return from + (long) (random.nextDouble() * (to - from));
+    }
+
+    private void say(String text, long delay) {
+        clock.schedule(() -> transport.feedMessage(chatId, id, name, text), delay);
+    }
+}
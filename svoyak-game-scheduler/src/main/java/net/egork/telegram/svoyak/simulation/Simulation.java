@@ -0,0 +1,303 @@
+package net.egork.telegram.svoyak.simulation;
+
+import net.egork.telegram.Clock;
+import net.egork.telegram.Execution;
+import net.egork.telegram.FakeTransport;
+import net.egork.telegram.PinChatMessage;
+import net.egork.telegram.ScaledClock;
+import net.egork.telegram.TelegramBot;
+import net.egork.telegram.VirtualClock;
+import net.egork.telegram.svoyak.data.Question;
+import net.egork.telegram.svoyak.data.Topic;
+import net.egork.telegram.svoyak.data.TopicSet;
+import net.egork.telegram.svoyak.data.User;
+import net.egork.telegram.svoyak.game.Game;
+import net.egork.telegram.svoyak.game.GameHost;
+import net.egork.telegram.svoyak.game.Roster;
+import net.egork.telegram.svoyak.scheduler.GameChat;
+import net.egork.telegram.svoyak.scheduler.GameData;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Plays whole games headless: bot players talk to real {@link Game}s through a {@link FakeTransport}, on a clock
+ * running faster than real time. Reports throughput, time spent in every game state and outbound API traffic.
+ * <p>
+ * Arguments are package files (.si), a generated package is used if there are none. Settings are system properties:
+ * {@code sim.games}, {@code sim.players}, {@code sim.topics}, {@code sim.speed}, {@code sim.buzz} (chance a player
+ * buzzes on a question), {@code sim.accuracy} (chance an answer is right), {@code sim.spectators} (spectator chats
+ * following each room), {@code sim.seed}. Bot settings apply too, e.g. {@code bot.coalesce.window} to see how many
+ * sends merging saves and what it costs in game time.
+ * <p>
+ * With {@code sim.clock=virtual} time doesn't flow on its own: the harness moves a {@link VirtualClock} from one
+ * deadline to the next as soon as the previous one has been handled. Adding {@code execution.mode=single} runs all
+ * executors on one thread, then runs with the same {@code sim.seed} are identical, down to the API calls.
+ *
+ * @author egor@egork.net
+ */
+public class Simulation implements GameHost {
+    private static final int QUESTIONS = 5;
+
+    private final FakeTransport transport = new FakeTransport(1);
+    private final FakeTransport broadcastTransport = new FakeTransport(2);
+    private final Clock clock;
+    private final TelegramBot bot;
+    private final TelegramBot broadcastBot;
+    private final Map<Long, GameChat> rooms = new ConcurrentHashMap<>();
+    private final Map<Long, List<BotPlayer>> players = new ConcurrentHashMap<>();
+    private final Map<Game, Long> enteredAt = new ConcurrentHashMap<>();
+    private final AtomicLongArray stateCount = new AtomicLongArray(Game.State.values().length);
+    private final AtomicLongArray stateTime = new AtomicLongArray(Game.State.values().length);
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger aborted = new AtomicInteger();
+    private final int spectators = Integer.parseInt(System.getProperty("sim.spectators", "0"));
+    private final long seed;
+    private CountDownLatch done;
+
+    public Simulation(Clock clock, long seed) {
+        this.clock = clock;
+        this.seed = seed;
+        bot = new TelegramBot(transport, "Simulation") {
+            @Override
+            protected void processMessage(Message message, long receivedAt) {
+                GameChat room = rooms.get(message.getChatId());
+                Game game = room == null ? null : room.getGame();
+                if (game != null) {
+                    game.process(message, receivedAt);
+                }
+            }
+        };
+        bot.setCoalescing(Boolean.parseBoolean(System.getProperty("play.coalesce", "true")));
+        // Like the scheduler bot in production, spectators are served by a bot of their own
+        broadcastBot = new TelegramBot(broadcastTransport, "Simulation broadcast") {
+            @Override
+            protected void processMessage(Message message, long receivedAt) {
+            }
+        };
+    }
+
+    @Override
+    public TelegramBot getGameBot() {
+        return bot;
+    }
+
+    @Override
+    public TelegramBot getBroadcastBot() {
+        return broadcastBot;
+    }
+
+    @Override
+    public Clock getClock() {
+        return clock;
+    }
+
+    @Override
+    public void endGame(long origChatId, TopicSet set, Roster roster, boolean aborted) {
+        finished.incrementAndGet();
+        if (aborted) {
+            this.aborted.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void kickUsers(long chatId) {
+        GameChat room = rooms.get(chatId);
+        if (room != null && !room.isFree()) {
+            room.setFree(true);
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void stateChanged(Game game, Game.State from, Game.State to) {
+        long now = clock.millis();
+        Long since = enteredAt.put(game, now);
+        if (from != null && since != null) {
+            stateCount.incrementAndGet(from.ordinal());
+            stateTime.addAndGet(from.ordinal(), now - since);
+        }
+        if (to == Game.State.AFTER_GAME) {
+            enteredAt.remove(game);
+        }
+        List<BotPlayer> room = players.get(game.getChatId());
+        if (room == null) {
+            return;
+        }
+        if (to == Game.State.QUESTION) {
+            for (BotPlayer player : room) {
+                player.questionOpen();
+            }
+        } else if (to == Game.State.ANSWER) {
+            for (BotPlayer player : room) {
+                if (player.getId() == game.getCurrentPlayer().getId()) {
+                    player.answer(game.getCurrentQuestion());
+                }
+            }
+        }
+    }
+
+    public void run(List<TopicSet> sets, int games, int playerCount, int topicCount, double buzzChance,
+            double accuracy) throws TelegramApiException, InterruptedException {
+        Random random = new Random(seed);
+        bot.start();
+        done = new CountDownLatch(games);
+        long start = System.currentTimeMillis();
+        long clockStart = clock.millis();
+        for (int i = 0; i < games; i++) {
+            int room = i;
+            TopicSet set = sets.get(i % sets.size());
+            if (clock instanceof VirtualClock) {
+                // Set up on the clock's executor as well, so it doesn't race the rooms already playing
+                clock.schedule(() -> open(room, set, playerCount, topicCount, buzzChance, accuracy, random), 0);
+            } else {
+                open(room, set, playerCount, topicCount, buzzChance, accuracy, random);
+            }
+        }
+        long timeout = Long.parseLong(System.getProperty("sim.timeout", "600"));
+        boolean completed;
+        if (clock instanceof VirtualClock) {
+            VirtualClock virtual = (VirtualClock) clock;
+            long deadline = start + TimeUnit.SECONDS.toMillis(timeout);
+            while (done.getCount() != 0 && System.currentTimeMillis() < deadline && virtual.advanceToNext()) {
+                // Each step fires one timer once everything the previous one caused has settled
+            }
+            completed = done.getCount() == 0;
+        } else {
+            completed = done.await(timeout, TimeUnit.SECONDS);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        report(games, completed, elapsed, clock.millis() - clockStart);
+    }
+
+    private void open(int index, TopicSet set, int playerCount, int topicCount, double buzzChance, double accuracy,
+            Random random) {
+        long chatId = -1000 - index;
+        GameChat room = new GameChat(chatId, "", false);
+        room.setFree(false);
+        rooms.put(chatId, room);
+        for (int j = 0; j < spectators; j++) {
+            room.getBroadcast().subscribe(-1000000 - index * spectators - j);
+        }
+        GameData data = new GameData();
+        List<BotPlayer> bots = new ArrayList<>();
+        for (int j = 0; j < playerCount; j++) {
+            int id = 1 + index * playerCount + j;
+            BotPlayer player = new BotPlayer(transport, clock, chatId, id, "Игрок" + id, buzzChance, accuracy,
+                    new Random(seed * 31 + id));
+            bots.add(player);
+            data.addPlayer(new User(id, player.getName(), null, null));
+        }
+        players.put(chatId, bots);
+        List<Integer> topics = new ArrayList<>();
+        for (int j = 0; j < set.topics.size(); j++) {
+            topics.add(j);
+        }
+        Collections.shuffle(topics, random);
+        topics = new ArrayList<>(topics.subList(0, Math.min(topicCount, topics.size())));
+        room.startGame(this, chatId, set, topics, data);
+        for (BotPlayer player : bots) {
+            player.join();
+        }
+    }
+
+    private void report(int games, boolean completed, long elapsed, long clockElapsed) {
+        int played = games - (int) done.getCount();
+        System.out.println("Games: " + played + "/" + games + (completed ? "" : " (timed out)") + ", aborted " +
+                aborted.get() + ", " + elapsed + "ms real, " + clockElapsed / 1000 + "s game time");
+        System.out.printf("Throughput: %.2f games/s%n", played * 1000.0 / Math.max(elapsed, 1));
+        System.out.println("Time in state (game time):");
+        for (Game.State state : Game.State.values()) {
+            long count = stateCount.get(state.ordinal());
+            if (count != 0) {
+                System.out.printf("  %-22s %6d times, average %6dms%n", state, count,
+                        stateTime.get(state.ordinal()) / count);
+            }
+        }
+        int sent = transport.getCallCount(SendMessage.class);
+        int edited = transport.getCallCount(EditMessageText.class);
+        System.out.println("Room outbound: " + sent + " sends, " + edited + " edits, " + (sent + edited) /
+                Math.max(played, 1) + " calls per game");
+        System.out.println("Pinned scoreboards: " + transport.getCallCount(PinChatMessage.class));
+        System.out.printf("Coalesced sends: %d (%.1f%% of sends), collapsed edits: %d, dead letters: %d%n",
+                bot.getCoalesced(), bot.getCoalesced() * 100.0 / Math.max(sent + bot.getCoalesced(), 1),
+                bot.getCollapsedEdits(), bot.getDeadLetters().size());
+        if (spectators != 0) {
+            int merged = 0;
+            int dropped = 0;
+            for (GameChat room : rooms.values()) {
+                merged += room.getBroadcast().getMerged();
+                dropped += room.getBroadcast().getDropped();
+            }
+            int broadcast = broadcastTransport.getCallCount(SendMessage.class);
+            System.out.println("Broadcast outbound to " + spectators + " chats per room: " + broadcast + " sends, " +
+                    broadcast / Math.max(played, 1) + " per game, " + merged + " events merged, " + dropped +
+                    " dropped");
+        }
+    }
+
+    private static List<TopicSet> loadSets(String[] files) throws IOException {
+        List<TopicSet> sets = new ArrayList<>();
+        for (String file : files) {
+            TopicSet set = TopicSet.parseReader(new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    StandardCharsets.UTF_8)));
+            if (set == null) {
+                System.err.println("Unable to parse " + file);
+            } else {
+                sets.add(set);
+            }
+        }
+        return sets;
+    }
+
+    private static TopicSet generateSet(int topicCount, Random random) {
+        List<Topic> topics = new ArrayList<>();
+        for (int i = 1; i <= topicCount; i++) {
+            List<Question> questions = new ArrayList<>();
+            for (int j = 1; j <= QUESTIONS; j++) {
+                questions.add(new Question(10 * j, "Вопрос " + j + " темы " + i,
+                        Arrays.asList("ответ " + i + "-" + j + " (" + random.nextInt(100) + ")")));
+            }
+            topics.add(new Topic("Тема " + i, questions));
+        }
+        return new TopicSet("sim", "Сгенерированный пакет", topics);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = Integer.parseInt(System.getProperty("sim.games", "20"));
+        int playerCount = Integer.parseInt(System.getProperty("sim.players", "3"));
+        int topicCount = Integer.parseInt(System.getProperty("sim.topics", "6"));
+        double speed = Double.parseDouble(System.getProperty("sim.speed", "100"));
+        double buzzChance = Double.parseDouble(System.getProperty("sim.buzz", "0.6"));
+        double accuracy = Double.parseDouble(System.getProperty("sim.accuracy", "0.5"));
+        long seed = Long.parseLong(System.getProperty("sim.seed", Long.toString(System.nanoTime())));
+        List<TopicSet> sets = loadSets(args);
+        if (sets.isEmpty()) {
+            sets.add(generateSet(topicCount, new Random(seed)));
+        }
+        // Installed before the bot is created, so its rate limits and retries run on simulated time too
+        Clock clock = "virtual".equals(System.getProperty("sim.clock")) ? new VirtualClock(0) : new ScaledClock(speed);
+        Execution.setClock(clock);
+        System.out.println("Seed: " + seed);
+        new Simulation(clock, seed).run(sets, games, playerCount, topicCount, buzzChance, accuracy);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,39 @@
+package net.egork.telegram;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author egor@egork.net
+ */
+public class DeadLetterQueueTest {
+    @Test
+    public void lettersSurviveReload() throws IOException {
+        File file = File.createTempFile("dead", ".letters");
+        file.deleteOnExit();
+        DeadLetterQueue queue = new DeadLetterQueue(file.getPath());
+        queue.add(new DeadLetter(DeadLetter.Type.SEND, -100, 0, "строка\nвторая \\n не перевод\r\n",
+                new String[]{"+", "кнопка\nс переводом"}, "Bad Request:\nmessage is too long", 1000));
+        queue.add(new DeadLetter(DeadLetter.Type.KICK, -100, 42, null, null, "Forbidden", 2000));
+        List<DeadLetter> letters = new DeadLetterQueue(file.getPath()).getLetters();
+        assertEquals(2, letters.size());
+        DeadLetter send = letters.get(0);
+        assertEquals(DeadLetter.Type.SEND, send.type);
+        assertEquals(-100, send.chatId);
+        assertEquals("строка\nвторая \\n не перевод\r\n", send.text);
+        assertArrayEquals(new String[]{"+", "кнопка\nс переводом"}, send.keyboard);
+        assertEquals("Bad Request:\nmessage is too long", send.error);
+        assertEquals(1000, send.time);
+        DeadLetter kick = letters.get(1);
+        assertEquals(42, kick.id);
+        assertNull(kick.text);
+        assertNull(kick.keyboard);
+    }
+}
@@ -0,0 +1,49 @@
+package net.egork.telegram;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author egor@egork.net
+ */
+public class HtmlSplitterTest {
+    @Test
+    public void shortTextIsKept() {
+        assertEquals(Arrays.asList("<b>Тема</b>"), HtmlSplitter.split("<b>Тема</b>", 100));
+    }
+
+    @Test
+    public void tagsOpenAtCutAreReopened() {
+        List<String> fragments = HtmlSplitter.split("<b><a href=\"http://x\">первая строка\nвторая строка</a></b>",
+                50);
+        assertEquals(Arrays.asList("<b><a href=\"http://x\">первая строка</a></b>",
+                "<b><a href=\"http://x\">вторая строка</a></b>"), fragments);
+    }
+
+    @Test
+    public void neverCutsInsideTagOrEntity() {
+        String text = "слово &amp; <i>курсив</i> &lt;текст&gt; <b>жирный</b> конец";
+        for (int limit = 12; limit < text.length(); limit++) {
+            for (String fragment : HtmlSplitter.split(text, limit)) {
+                assertFalse(fragment, fragment.matches(".*<[^>]*") || fragment.matches("(?s).*&[a-z]*"));
+                assertTrue(fragment, fragment.length() <= limit);
+            }
+        }
+    }
+
+    @Test
+    public void noBlankFragments() {
+        String text = "<a href=\"http://x\">ссылка</a>\n\n\n\n<b>жирный\n\n\n\n</b>";
+        for (int limit = 25; limit < text.length(); limit++) {
+            for (String fragment : HtmlSplitter.split(text, limit)) {
+                assertFalse(fragment, fragment.replaceAll("<[^>]*>", "").trim().isEmpty());
+            }
+        }
+    }
+}
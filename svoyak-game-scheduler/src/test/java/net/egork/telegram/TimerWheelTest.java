@@ -0,0 +1,62 @@
+package net.egork.telegram;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author egor@egork.net
+ */
+public class TimerWheelTest {
+    @Test
+    public void delayLongerThanWheelWaitsForItsRound() throws InterruptedException {
+        // 4 ticks of 5ms, so 100ms is 5 rounds of the wheel
+        TimerWheel wheel = new TimerWheel("Test", 5, 4);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long start = System.currentTimeMillis();
+        wheel.schedule(() -> {
+            ranAt.set(System.currentTimeMillis());
+            done.countDown();
+        }, 100);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAt.get() - start >= 100);
+        assertEquals(0, awaitPending(wheel));
+    }
+
+    @Test
+    public void cancelledTaskNeverRuns() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("Test", 5, 4);
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 50);
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 100);
+        timeout.cancel();
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertEquals(0, awaitPending(wheel));
+    }
+
+    @Test
+    public void periodicTaskRepeatsUntilCancelled() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("Test", 5, 4);
+        CountDownLatch runs = new CountDownLatch(3);
+        TimerWheel.Timeout timeout = wheel.schedule(runs::countDown, 10, 10);
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        timeout.cancel();
+    }
+
+    // A task is counted as pending until it has finished running
+    private static int awaitPending(TimerWheel wheel) throws InterruptedException {
+        for (int i = 0; i < 100 && wheel.getPending() != 0; i++) {
+            Thread.sleep(10);
+        }
+        return wheel.getPending();
+    }
+}
@@ -0,0 +1,39 @@
+package net.egork.telegram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author egor@egork.net
+ */
+public class TokenBucketTest {
+    @Test
+    public void burstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.delay(0));
+            bucket.take(0);
+        }
+        assertEquals(1000, bucket.delay(0));
+    }
+
+    @Test
+    public void refillsAtRate() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        bucket.take(0);
+        assertEquals(500, bucket.delay(0));
+        assertEquals(200, bucket.delay(300));
+        assertEquals(0, bucket.delay(500));
+    }
+
+    @Test
+    public void idleTimeDoesNotExceedCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 1);
+        bucket.take(0);
+        bucket.take(0);
+        bucket.take(100000);
+        bucket.take(100000);
+        assertEquals(1000, bucket.delay(100000));
+    }
+}
@@ -0,0 +1,82 @@
+package net.egork.telegram.svoyak.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author egor@egork.net
+ */
+public class AnswerMatcherTest {
+    @Test
+    public void exactIgnoresCasePunctuationAndBrackets() {
+        AnswerMatcher matcher = new AnswerMatcher(Arrays.asList("Ёлка (зелёная)", "Ель"));
+        assertTrue(matcher.matches("елка"));
+        assertTrue(matcher.matches(" ЁЛКА ЗЕЛЕНАЯ!"));
+        assertTrue(matcher.matches("ель."));
+        assertFalse(matcher.matches("ёлки"));
+    }
+
+    @Test
+    public void toleranceGrowsWithLength() {
+        assertEquals(0, AnswerMatcher.getTolerance(4));
+        assertEquals(1, AnswerMatcher.getTolerance(5));
+        assertEquals(2, AnswerMatcher.getTolerance(14));
+        assertEquals(3, AnswerMatcher.getTolerance(64));
+    }
+
+    @Test
+    public void typosWithinTolerance() {
+        // 9 letters, one typo allowed
+        AnswerMatcher matcher = new AnswerMatcher(Collections.singletonList("Менделеев"));
+        assertTrue(matcher.matches("Мендилеев", true, false));
+        assertTrue(matcher.matches("Менделев", true, false));
+        assertTrue(matcher.matches("Менделеевв", true, false));
+        assertFalse(matcher.matches("Мендилеевв", true, false));
+        assertFalse(matcher.matches("Мендилеев", false, false));
+    }
+
+    @Test
+    public void shortAnswersOnlyExact() {
+        AnswerMatcher matcher = new AnswerMatcher(Collections.singletonList("Кот"));
+        assertFalse(matcher.matches("Кит", true, false));
+    }
+
+    @Test
+    public void distanceFitsLongestMaskedAnswer() {
+        char[] letters = new char[64];
+        Arrays.fill(letters, 'а');
+        letters[63] = 'б';
+        String answer = new String(letters);
+        AnswerMatcher matcher = new AnswerMatcher(Collections.singletonList(answer));
+        letters[0] = 'в';
+        letters[40] = 'в';
+        letters[63] = 'в';
+        assertTrue(matcher.matches(new String(letters), true, false));
+        letters[20] = 'в';
+        assertFalse(matcher.matches(new String(letters), true, false));
+    }
+
+    @Test
+    public void longerAnswersOnlyExact() {
+        char[] letters = new char[65];
+        Arrays.fill(letters, 'а');
+        AnswerMatcher matcher = new AnswerMatcher(Collections.singletonList(new String(letters)));
+        assertTrue(matcher.matches(new String(letters), true, false));
+        letters[0] = 'б';
+        assertFalse(matcher.matches(new String(letters), true, false));
+    }
+
+    @Test
+    public void stemsOnlyMatchStemmedInput() {
+        AnswerMatcher matcher = new AnswerMatcher(Collections.singletonList("Пушкин"), new RussianStemmer());
+        assertTrue(matcher.matches("Пушкиным", false, true));
+        assertFalse(matcher.matches("Пушкиным", false, false));
+        assertFalse(matcher.matches("Пушкиным"));
+    }
+}
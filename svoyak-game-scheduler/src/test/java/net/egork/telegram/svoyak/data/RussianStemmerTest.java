@@ -0,0 +1,34 @@
+package net.egork.telegram.svoyak.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author egor@egork.net
+ */
+public class RussianStemmerTest {
+    private final RussianStemmer stemmer = new RussianStemmer();
+
+    @Test
+    public void caseEndingsAreStripped() {
+        assertEquals("пушкин", stemmer.normalize("Пушкин"));
+        assertEquals("пушкин", stemmer.normalize("Пушкина"));
+        assertEquals("пушкин", stemmer.normalize("Пушкиным"));
+        assertEquals("александр пушкин", stemmer.normalize("Александра Пушкина"));
+    }
+
+    @Test
+    public void surnameSuffixesAreKept() {
+        assertEquals("иванов", stemmer.normalize("Ивановым"));
+        assertNotEquals(stemmer.normalize("Иван"), stemmer.normalize("Иванов"));
+        assertNotEquals(stemmer.normalize("Петр"), stemmer.normalize("Петров"));
+    }
+
+    @Test
+    public void shortWordsAreKept() {
+        assertEquals("мир", stemmer.normalize("Мир"));
+        assertEquals("елка", stemmer.normalize("Ёлка"));
+    }
+}
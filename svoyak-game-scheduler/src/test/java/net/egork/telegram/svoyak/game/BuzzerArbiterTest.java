@@ -0,0 +1,57 @@
+package net.egork.telegram.svoyak.game;
+
+import net.egork.telegram.svoyak.data.User;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author egor@egork.net
+ */
+public class BuzzerArbiterTest {
+    private final User first = new User(1, "Первый", null, null);
+    private final User second = new User(2, "Второй", null, null);
+    private final User third = new User(3, "Третий", null, null);
+
+    @Test
+    public void earliestReceivedWinsWithinSecond() {
+        BuzzerArbiter arbiter = new BuzzerArbiter(-1);
+        assertTrue(arbiter.press(second, 100, 1150));
+        assertFalse(arbiter.press(first, 100, 1100));
+        assertFalse(arbiter.press(third, 100, 1120));
+        assertSame(first, arbiter.decide());
+    }
+
+    @Test
+    public void telegramDateComesFirst() {
+        BuzzerArbiter arbiter = new BuzzerArbiter(-1);
+        arbiter.press(first, 101, 1000);
+        arbiter.press(second, 100, 1050);
+        assertSame(second, arbiter.decide());
+    }
+
+    @Test
+    public void repeatedPressIsIgnored() {
+        BuzzerArbiter arbiter = new BuzzerArbiter(-1);
+        arbiter.press(second, 100, 1100);
+        arbiter.press(first, 100, 1200);
+        assertFalse(arbiter.press(first, 100, 1000));
+        assertSame(second, arbiter.decide());
+    }
+
+    @Test
+    public void decideStartsNewRound() {
+        BuzzerArbiter arbiter = new BuzzerArbiter(-1);
+        assertNull(arbiter.decide());
+        assertEquals(0, arbiter.getRound());
+        arbiter.press(first, 100, 1000);
+        arbiter.decide();
+        assertEquals(1, arbiter.getRound());
+        assertFalse(arbiter.hasPresses());
+        assertTrue(arbiter.press(first, 101, 2000));
+    }
+}
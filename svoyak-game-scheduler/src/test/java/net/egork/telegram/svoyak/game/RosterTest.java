@@ -0,0 +1,60 @@
+package net.egork.telegram.svoyak.game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author egor@egork.net
+ */
+public class RosterTest {
+    @Test
+    public void seatsRunOut() {
+        Roster roster = new Roster();
+        for (int i = 0; i < Roster.MAX_SEATS; i++) {
+            assertEquals(i, roster.seat(100 + i, "Игрок" + i));
+        }
+        assertEquals(-1, roster.seat(1, "Лишний"));
+        assertEquals(Roster.MAX_SEATS, roster.size());
+        assertFalse(roster.contains(1));
+        // Players already seated keep their seats
+        assertEquals(5, roster.seat(105, "Новое имя"));
+        assertEquals("Новое имя", roster.getName(5));
+    }
+
+    @Test
+    public void lastSeatUsesHighBit() {
+        Roster roster = new Roster();
+        for (int i = 0; i < Roster.MAX_SEATS; i++) {
+            roster.seat(i, "Игрок" + i);
+        }
+        for (int i = 0; i < Roster.MAX_SEATS - 1; i++) {
+            assertFalse(roster.markPresent(i));
+        }
+        assertTrue(roster.markPresent(Roster.MAX_SEATS - 1));
+        roster.answered(Roster.MAX_SEATS - 1);
+        assertTrue(roster.hasAnswered(Roster.MAX_SEATS - 1));
+        assertFalse(roster.hasAnswered(0));
+    }
+
+    @Test
+    public void wrongAnswersBeforeCorrectLosePoints() {
+        Roster roster = new Roster();
+        roster.seat(1, "А");
+        roster.seat(2, "Б");
+        roster.seat(3, "В");
+        roster.newQuestion();
+        roster.answered(2);
+        roster.answered(0);
+        roster.answered(1);
+        roster.setCorrect(0);
+        roster.countResults(30);
+        assertEquals(30, roster.getScore(0));
+        assertEquals(0, roster.getScore(1));
+        assertEquals(-30, roster.getScore(2));
+        assertArrayEquals(new int[]{0, 1, 2}, roster.standings());
+    }
+}